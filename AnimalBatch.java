@@ -0,0 +1,174 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Non-interactive command runner for the registry, used by "java Driver --batch <file>"
+// (or "-" for stdin). One command per line:
+//
+//   intake Dog,<name>,<breed>,<gender>,<age>,<weight>,<date>,<country>,<status>,<reserved>,<inServiceCountry>
+//   intake Monkey,<name>,<species>,<tail>,<height>,<body>,<gender>,<age>,<weight>,<date>,<country>,<status>,<reserved>,<inServiceCountry>
+//   reserve <dog|monkey>,<in-service country>
+//   search <name|type|country>,<value>
+//   save
+//
+// Intake records use the animals.txt format. Blank lines and lines starting with '#'
+// are ignored.
+//
+// Intakes are parsed as they are read but only added when the batch is flushed: when a
+// reserve or search needs to see them, every BATCH_SIZE intakes, or at the end of the
+// input. A flush checks the whole batch for duplicates in one pass and adds the new
+// animals under a single registry lock. Save commands only mark the data dirty; one
+// save runs after the last command.
+public class AnimalBatch {
+
+    // Pending intakes are flushed once this many have accumulated
+    public static final int BATCH_SIZE = 10_000;
+
+    private final AnimalRegistry registry;
+    private final AnimalJournal journal;
+    private final PrintWriter out;
+
+    private final List<RescueAnimal> pending = new ArrayList<>();
+    private boolean saveRequested;
+
+    // Totals for the summary
+    private int commands;
+    private int added;
+    private int duplicates;
+    private int reserved;
+    private int unavailable;
+    private int searches;
+    private int invalid;
+
+    public AnimalBatch(AnimalRegistry registry, AnimalJournal journal, PrintWriter out) {
+        this.registry = registry;
+        this.journal = journal;
+        this.out = out;
+    }
+
+    // Runs every command in the input, then the deferred save, and prints a summary
+    public void run(BufferedReader in) throws IOException {
+        long start = System.nanoTime();
+        String line;
+        long lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            String command = line.trim();
+            if (command.isEmpty() || command.startsWith("#")) {
+                continue;
+            }
+            commands++;
+            try {
+                execute(command);
+            } catch (IllegalArgumentException e) {
+                invalid++;
+                out.println("line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        flush();
+        if (saveRequested) {
+            save();
+        }
+        printSummary(System.nanoTime() - start);
+        out.flush();
+    }
+
+    private void execute(String command) {
+        int space = command.indexOf(' ');
+        String verb = (space < 0 ? command : command.substring(0, space)).toLowerCase();
+        String argument = space < 0 ? "" : command.substring(space + 1).trim();
+
+        switch (verb) {
+            case "intake": intake(argument); break;
+            case "reserve": flush(); reserve(argument); break;
+            case "search": flush(); search(argument); break;
+            case "save": saveRequested = true; break;
+            default: throw new IllegalArgumentException("unknown command '" + verb + "'");
+        }
+    }
+
+    private void intake(String record) {
+        RescueAnimal animal = AnimalLoader.parseLine(record);
+        if (animal instanceof Monkey) {
+            Monkey monkey = (Monkey) animal;
+            if (!Monkey.isValidSpecies(monkey.getSpecies())) {
+                throw new IllegalArgumentException("invalid species '" + monkey.getSpecies() + "'");
+            }
+        }
+        pending.add(animal);
+        if (pending.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    // Adds the pending intakes in one call, skipping duplicates of registered animals and
+    // of earlier intakes in the batch
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int skipped = registry.addAllAbsent(pending).size();
+        duplicates += skipped;
+        added += pending.size() - skipped;
+        pending.clear();
+    }
+
+    private void reserve(String argument) {
+        String[] fields = AnimalLoader.splitFields(argument, 2);
+        String type = fields[0].trim().toLowerCase();
+        if (!(type.equals("dog") || type.equals("monkey"))) {
+            throw new IllegalArgumentException("invalid animal type '" + fields[0] + "'");
+        }
+        RescueAnimal animal = registry.reserve(type, fields[1].trim());
+        if (animal != null) {
+            reserved++;
+            out.println("reserved " + type + " " + animal.getName());
+        } else {
+            unavailable++;
+            out.println("no " + type + " available in " + fields[1].trim());
+        }
+    }
+
+    private void search(String argument) {
+        String[] fields = AnimalLoader.splitFields(argument, 2);
+        String field = fields[0].trim().toLowerCase();
+        String value = fields[1].trim();
+        List<RescueAnimal> matches;
+        if (field.equals("name")) {
+            matches = registry.findByName(value);
+        } else if (field.equals("type")) {
+            matches = registry.findByType(value);
+        } else if (field.equals("country")) {
+            matches = registry.findByAcquisitionCountry(value);
+        } else {
+            throw new IllegalArgumentException("invalid search field '" + fields[0] + "'");
+        }
+        searches++;
+        out.println("search " + field + " '" + value + "': " + matches.size() + " match(es)");
+        for (RescueAnimal animal : matches) {
+            out.println("  " + (animal instanceof Monkey ? "Monkey" : "Dog") + ": " + animal.getName()
+                    + " | " + animal.getTrainingStatus() + " | " + animal.getAcquisitionCountry());
+        }
+    }
+
+    private void save() {
+        try {
+            int records = journal.save();
+            out.println(records < 0 ? "saved animals.txt" : "saved " + records + " change(s) to the journal");
+        } catch (IOException e) {
+            out.println("error saving data: " + e.getMessage());
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.println("Batch complete: " + commands + " command(s) in " + Math.round(elapsedNanos / 1e6) + " ms"
+                + (seconds > 0 ? " (" + Math.round(commands / seconds) + "/s)" : ""));
+        out.println("  intakes added: " + added + ", duplicates skipped: " + duplicates);
+        out.println("  reservations: " + reserved + ", unavailable: " + unavailable);
+        out.println("  searches: " + searches);
+        out.println("  invalid commands: " + invalid);
+    }
+}
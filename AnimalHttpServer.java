@@ -0,0 +1,572 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Embedded HTTP/JSON API over the registry, built on the JDK's com.sun.net.httpserver:
+//
+//   GET  /animals/dogs | /animals/monkeys | /animals/available   streamed JSON array
+//   POST /animals/dogs | /animals/monkeys                        intake (JSON object body)
+//   POST /animals/import                                         bulk intake (JSON array body)
+//   POST /reserve?type=dog&country=Canada                        reserve one animal
+//   POST /names/claim?type=dog&name=Rex                          claim a name (409 if taken)
+//   POST /names/release?type=dog&name=Rex                        give a claimed name back
+//   POST /names/claim-all  [{"type":"Dog","name":"Rex"}, ...]    claim many; [true, false, ...]
+//   GET  /search?name=..&match=exact|prefix|fuzzy&type=..&gender=..&trainingStatus=..
+//               &acquisitionCountry=..&inServiceCountry=..&unreserved=true&offset=..&limit=..
+//
+// Requests run on virtual threads when the JVM has them (Java 21+) and on a fixed pool
+// of worker threads otherwise. Connections are kept alive between requests. At most
+// maxConcurrent + queueCapacity requests are admitted at once; beyond that the server
+// answers 503 straight away instead of queueing without bound. Responses are written
+// with chunked encoding through AnimalJsonCodec, so a large list is never built in memory.
+//
+// The /names claims are a separate set of (type, name) pairs kept for ShardedAnimalStore,
+// which makes one shard the authority for each name; they do not touch the registry.
+//
+// Built over a ShardedAnimalStore instead of a registry, the server is the router's
+// front end: intake, /reserve and /search go through the router to the shards, and a
+// shard that cannot be reached answers 502. The list, import and /names resources are
+// only served by the shards themselves.
+public class AnimalHttpServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CONCURRENT = 64;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SMALL_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    // Animals copied out of the registry or the availability view at a time while a
+    // list is streamed
+    private static final int LIST_BLOCK = 1024;
+
+    // Threads that answer rejected requests that have a body; see reject()
+    private static final int REJECTION_THREADS = 4;
+
+    // Set while a request that could not be admitted runs on the dispatcher thread
+    private static final ThreadLocal<Boolean> OVERLOADED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final AnimalRegistry registry;
+    private final AnimalSearchEngine search;
+    private final AvailabilityView availability;
+    private final ShardedAnimalStore router;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ThreadPoolExecutor rejections = new ThreadPoolExecutor(0, REJECTION_THREADS,
+            5, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+                Thread thread = new Thread(task, "http-rejection");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final Semaphore admitted;
+
+    // Claimed "type|name" keys, see /names
+    private final Set<String> claimedNames = ConcurrentHashMap.newKeySet();
+
+    public AnimalHttpServer(AnimalRegistry registry, AnimalSearchEngine search, AvailabilityView availability,
+                            int port) throws IOException {
+        this(registry, search, availability, port, DEFAULT_MAX_CONCURRENT, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public AnimalHttpServer(AnimalRegistry registry, AnimalSearchEngine search, AvailabilityView availability,
+                            int port, int maxConcurrent, int queueCapacity) throws IOException {
+        this(registry, search, availability, new InetSocketAddress(port), maxConcurrent, queueCapacity);
+    }
+
+    public AnimalHttpServer(AnimalRegistry registry, AnimalSearchEngine search, AvailabilityView availability,
+                            InetSocketAddress address, int maxConcurrent, int queueCapacity) throws IOException {
+        this(registry, search, availability, null, address, maxConcurrent, queueCapacity);
+    }
+
+    // Front end for a sharded store
+    public AnimalHttpServer(ShardedAnimalStore router, int port) throws IOException {
+        this(null, null, null, router, new InetSocketAddress(port), DEFAULT_MAX_CONCURRENT, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    private AnimalHttpServer(AnimalRegistry registry, AnimalSearchEngine search, AvailabilityView availability,
+                             ShardedAnimalStore router, InetSocketAddress address, int maxConcurrent,
+                             int queueCapacity) throws IOException {
+        this.registry = registry;
+        this.search = search;
+        this.availability = availability;
+        this.router = router;
+        this.workers = newWorkerExecutor(maxConcurrent);
+        this.admitted = new Semaphore(maxConcurrent + queueCapacity);
+        this.server = HttpServer.create(address, queueCapacity);
+        server.createContext("/animals", this::handleAnimals);
+        server.createContext("/reserve", this::handleReserve);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/names", this::handleNames);
+        server.setExecutor(new AdmissionExecutor());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stops accepting requests, waiting up to delaySeconds for running ones to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+        rejections.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // One virtual thread per request where available, otherwise a fixed pool
+    private static ExecutorService newWorkerExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    // Hands requests to the workers while permits last; rejected requests run on the
+    // dispatcher thread with OVERLOADED set and only send a 503, see reject()
+    private class AdmissionExecutor implements Executor {
+        @Override
+        public void execute(Runnable request) {
+            if (admitted.tryAcquire()) {
+                workers.execute(() -> {
+                    try {
+                        request.run();
+                    } finally {
+                        admitted.release();
+                    }
+                });
+            } else {
+                OVERLOADED.set(Boolean.TRUE);
+                try {
+                    request.run();
+                } finally {
+                    OVERLOADED.set(Boolean.FALSE);
+                }
+            }
+        }
+    }
+
+    // Handler body that may fail with an HTTP status
+    private interface Action {
+        void run(HttpExchange exchange) throws IOException;
+    }
+
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private void handleAnimals(HttpExchange exchange) {
+        handle(exchange, ex -> {
+            String list = ex.getRequestURI().getPath().substring("/animals".length());
+            String method = ex.getRequestMethod();
+            if (router != null && !(method.equals("POST") && (list.equals("/dogs") || list.equals("/monkeys")))) {
+                throw new HttpError(404, "Not served by the router; ask a shard");
+            }
+            if (method.equals("GET") && (list.equals("/dogs") || list.equals("/monkeys") || list.equals("/available"))) {
+                streamList(ex, list.substring(1));
+            } else if (method.equals("POST") && list.equals("/dogs")) {
+                intake(ex, "Dog");
+            } else if (method.equals("POST") && list.equals("/monkeys")) {
+                intake(ex, "Monkey");
+            } else if (method.equals("POST") && list.equals("/import")) {
+                importArray(ex);
+            } else {
+                throw new HttpError(404, "No such resource");
+            }
+        });
+    }
+
+    private void handleReserve(HttpExchange exchange) {
+        handle(exchange, ex -> {
+            requireMethod(ex, "POST");
+            Map<String, String> params = queryParams(ex);
+            String type = AnimalRegistry.key(params.get("type"));
+            String country = params.get("country");
+            if (!(type.equals("dog") || type.equals("monkey")) || country == null) {
+                throw new HttpError(400, "type (dog/monkey) and country are required");
+            }
+            RescueAnimal animal;
+            try {
+                animal = router != null ? router.reserve(type, country) : registry.reserve(type, country);
+            } catch (IOException e) {
+                throw shardError(e);
+            }
+            if (animal == null) {
+                throw new HttpError(404, "No " + type + " available in " + country);
+            }
+            sendAnimal(ex, 200, animal);
+        });
+    }
+
+    private void handleSearch(HttpExchange exchange) {
+        handle(exchange, ex -> {
+            requireMethod(ex, "GET");
+            Map<String, String> params = queryParams(ex);
+            AnimalSearchEngine.Query query = new AnimalSearchEngine.Query();
+            String name = params.get("name");
+            if (name != null) {
+                String match = params.getOrDefault("match", "exact").toUpperCase();
+                try {
+                    query.name(name, AnimalSearchEngine.NameMatch.valueOf(match));
+                } catch (IllegalArgumentException e) {
+                    throw new HttpError(400, "match must be exact, prefix or fuzzy");
+                }
+            }
+            for (String field : new String[] { AnimalSearchEngine.TYPE, AnimalSearchEngine.GENDER,
+                    AnimalSearchEngine.TRAINING_STATUS, AnimalSearchEngine.ACQUISITION_COUNTRY,
+                    AnimalSearchEngine.IN_SERVICE_COUNTRY }) {
+                String value = params.get(field);
+                if (value != null) {
+                    query.where(field, value);
+                }
+            }
+            query.unreservedOnly(Boolean.parseBoolean(params.get("unreserved")));
+            query.page(intParam(params, "offset", 0), intParam(params, "limit", 25));
+
+            AnimalSearchEngine.Page page;
+            try {
+                page = router != null ? router.search(query) : search.search(query);
+            } catch (IOException e) {
+                throw shardError(e);
+            }
+            try (AnimalJsonCodec.Writer json = startStream(ex, 200)) {
+                json.beginObject()
+                        .name("offset").value(page.getOffset())
+                        .name("hasMore").value(page.hasMore())
+                        .name("results").beginArray();
+                for (AnimalSearchEngine.Hit hit : page.getHits()) {
+                    json.animal(hit.getAnimal());
+                }
+                json.endArray().endObject();
+            }
+        });
+    }
+
+    // Claims or releases a (type, name) pair; a claim is atomic, so of several routers
+    // claiming the same name at once exactly one gets 200 and the others 409
+    private void handleNames(HttpExchange exchange) {
+        handle(exchange, ex -> {
+            if (router != null) {
+                throw new HttpError(404, "Not served by the router; ask a shard");
+            }
+            requireMethod(ex, "POST");
+            String action = ex.getRequestURI().getPath().substring("/names".length());
+            if (action.equals("/claim-all")) {
+                claimAll(ex);
+                return;
+            }
+            Map<String, String> params = queryParams(ex);
+            String type = AnimalRegistry.key(params.get("type"));
+            String name = params.get("name");
+            if (type.isEmpty() || name == null || name.trim().isEmpty()) {
+                throw new HttpError(400, "type and name are required");
+            }
+            String key = type + "|" + AnimalRegistry.key(name);
+            boolean done;
+            if (action.equals("/claim")) {
+                if (!claimedNames.add(key)) {
+                    throw new HttpError(409, type + " " + name + " is already in our system");
+                }
+                done = true;
+            } else if (action.equals("/release")) {
+                done = claimedNames.remove(key);
+            } else {
+                throw new HttpError(404, "No such resource");
+            }
+            try (AnimalJsonCodec.Writer json = startStream(ex, 200)) {
+                json.beginObject().name(action.substring(1)).value(done).endObject();
+            }
+        });
+    }
+
+    // Claims every name in a streamed JSON array of animals (only type and name are
+    // read); answers with one boolean per animal, true where the claim succeeded. The
+    // whole body is read before the answer is sent.
+    private void claimAll(HttpExchange exchange) throws IOException {
+        BitSet claimed = new BitSet();
+        int[] count = new int[1];
+        long read;
+        try {
+            AnimalJsonCodec.Reader reader = new AnimalJsonCodec.Reader(exchange.getRequestBody());
+            read = reader.readArray(null, animal -> {
+                String key = AnimalRegistry.typeKey(animal) + "|" + AnimalRegistry.key(animal.getName());
+                claimed.set(count[0]++, claimedNames.add(key));
+            });
+        } catch (EOFException e) {
+            throw new HttpError(400, "Incomplete JSON body");
+        }
+        try (AnimalJsonCodec.Writer json = startStream(exchange, 200)) {
+            json.beginObject().name("claimed").beginArray();
+            for (int i = 0; i < read; i++) {
+                json.value(claimed.get(i));
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    // Runs an action, turning HttpErrors and bad input into JSON error responses
+    private void handle(HttpExchange exchange, Action action) {
+        if (OVERLOADED.get()) {
+            reject(exchange);
+            return;
+        }
+        try {
+            try {
+                action.run(exchange);
+            } catch (HttpError e) {
+                if (e.status == 413) {
+                    // Reading the rest of an oversized body would defeat the limit
+                    exchange.getResponseHeaders().set("Connection", "close");
+                } else {
+                    drain(exchange);
+                }
+                sendError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                drain(exchange);
+                sendError(exchange, 400, e.getMessage());
+            }
+        } catch (IOException e) {
+            // The client went away; nothing left to send
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Answers a request that was not admitted with 503 and Connection: close, without
+    // reading its body on the dispatcher thread. The JDK server reads up to 64 KB of an
+    // unread body when a response is closed, so a request that has a body is answered
+    // on one of a few rejection threads instead; when those are all busy its connection
+    // is dropped without an answer.
+    private void reject(HttpExchange exchange) {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.getResponseHeaders().set("Connection", "close");
+        Runnable answer = () -> {
+            try {
+                sendError(exchange, 503, "Server busy");
+            } catch (IOException e) {
+                // The client went away; nothing left to send
+            } finally {
+                exchange.close();
+            }
+        };
+        if (!hasBody(exchange)) {
+            answer.run();
+            return;
+        }
+        try {
+            rejections.execute(answer);
+        } catch (RejectedExecutionException e) {
+            // No response headers sent, so close() drops the connection without reading
+            exchange.close();
+        }
+    }
+
+    private static boolean hasBody(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        return exchange.getRequestHeaders().containsKey("Transfer-Encoding")
+                || (length != null && !length.trim().equals("0"));
+    }
+
+    // Writes every animal of a list as a JSON array with chunked encoding. The animals
+    // are copied a block at a time, so no request copies a whole list and the registry
+    // or view is locked only while a block is copied, not while it is written. The
+    // available list comes from the AvailabilityView instead of a scan.
+    private void streamList(HttpExchange exchange, String list) throws IOException {
+        try (AnimalJsonCodec.Writer json = startStream(exchange, 200)) {
+            json.beginArray();
+            if (list.equals("available")) {
+                availability.forEachAvailable(AvailabilityView.DOG, LIST_BLOCK, json::animal);
+                availability.forEachAvailable(AvailabilityView.MONKEY, LIST_BLOCK, json::animal);
+            } else {
+                boolean monkeys = list.equals("monkeys");
+                List<? extends RescueAnimal> block;
+                int from = 0;
+                do {
+                    block = monkeys ? registry.copyMonkeys(from, LIST_BLOCK) : registry.copyDogs(from, LIST_BLOCK);
+                    for (RescueAnimal animal : block) {
+                        json.animal(animal);
+                    }
+                    from += block.size();
+                } while (block.size() == LIST_BLOCK);
+            }
+            json.endArray();
+        }
+    }
+
+    private void intake(HttpExchange exchange, String type) throws IOException {
+        RescueAnimal animal;
+        try {
+            AnimalJsonCodec.Reader reader = new AnimalJsonCodec.Reader(
+                    new LimitedInputStream(exchange.getRequestBody(), MAX_BODY_BYTES), SMALL_BUFFER_SIZE);
+            animal = reader.readAnimal(type);
+        } catch (EOFException e) {
+            throw new HttpError(400, "Incomplete JSON body");
+        }
+        if (!(type.equals("Dog") ? animal instanceof Dog : animal instanceof Monkey)) {
+            throw new HttpError(400, "Expected a " + type);
+        }
+        if (animal instanceof Monkey) {
+            String species = ((Monkey) animal).getSpecies();
+            if (!Monkey.isValidSpecies(species)) {
+                throw new HttpError(400, "Invalid species '" + species + "'");
+            }
+        }
+        boolean added;
+        try {
+            added = router != null ? router.intake(animal) : registry.addIfAbsent(animal);
+        } catch (IOException e) {
+            throw shardError(e);
+        }
+        if (!added) {
+            throw new HttpError(409, type + " " + animal.getName() + " is already in our system");
+        }
+        sendAnimal(exchange, 201, animal);
+    }
+
+    // A failure talking to a shard, as opposed to the client going away
+    private static HttpError shardError(IOException e) {
+        return new HttpError(502, "Shard unavailable: " + e.getMessage());
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new HttpError(405, "Use " + method);
+        }
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    // Adds every animal in a streamed JSON array, skipping duplicates and invalid species
+    private void importArray(HttpExchange exchange) throws IOException {
+        long[] counts = new long[2]; // added, skipped
+        long read;
+        try {
+            AnimalJsonCodec.Reader reader = new AnimalJsonCodec.Reader(exchange.getRequestBody());
+            read = reader.readArray(null, animal -> {
+                boolean valid = !(animal instanceof Monkey)
+                        || Monkey.isValidSpecies(((Monkey) animal).getSpecies());
+                counts[valid && registry.addIfAbsent(animal) ? 0 : 1]++;
+            });
+        } catch (EOFException e) {
+            throw new HttpError(400, "Incomplete JSON body after " + (counts[0] + counts[1]) + " animal(s)");
+        }
+        try (AnimalJsonCodec.Writer json = startStream(exchange, 200)) {
+            json.beginObject().name("read").value(read).name("added").value(counts[0])
+                    .name("skipped").value(counts[1]).endObject();
+        }
+    }
+
+    // Request body that fails with 413 once more than max bytes have been read
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long max) {
+            super(in);
+            this.remaining = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && --remaining < 0) {
+                throw new HttpError(413, "Request body too large");
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0 && (remaining -= read) < 0) {
+                throw new HttpError(413, "Request body too large");
+            }
+            return read;
+        }
+    }
+
+    // Consumes up to MAX_BODY_BYTES of unread request body so the connection can be
+    // reused. A longer body is left unread and the response asks for Connection: close;
+    // the JDK server then drops the connection once the response is sent.
+    private static void drain(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[SMALL_BUFFER_SIZE];
+        long remaining = MAX_BODY_BYTES;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                return;
+            }
+            remaining -= read;
+        }
+        exchange.getResponseHeaders().set("Connection", "close");
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        try (AnimalJsonCodec.Writer json = startStream(exchange, status)) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+    }
+
+    private static void sendAnimal(HttpExchange exchange, int status, RescueAnimal animal) throws IOException {
+        try (AnimalJsonCodec.Writer json = startStream(exchange, status)) {
+            json.animal(animal);
+        }
+    }
+
+    // Sends the headers for a chunked JSON response and returns a writer for the body;
+    // the writer's buffer is flushed as one chunk per fill
+    private static AnimalJsonCodec.Writer startStream(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new AnimalJsonCodec.Writer(exchange.getResponseBody(), "GET".equals(exchange.getRequestMethod())
+                ? BUFFER_SIZE : SMALL_BUFFER_SIZE);
+    }
+}
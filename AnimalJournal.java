@@ -0,0 +1,507 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+
+// Append-only write-ahead journal for the animal registry. Each intake and each field
+// change made through a setter is appended as one record, so saving costs time in
+// proportion to the number of changes rather than the number of animals.
+//
+// The journal always describes changes on top of a snapshot file (animals.txt).
+// Compaction rewrites the snapshot from the registry and truncates the journal;
+// recovery loads the snapshot and replays the journal on top of it.
+//
+// While the in-memory animals do not match the snapshot (at startup, or after a load
+// from another source) nothing is appended: the next save compacts instead.
+//
+// The journal starts with the length and CRC32C of the snapshot it applies to, and
+// replay ignores a journal written for another snapshot instead of adding its intakes a
+// second time. Journals written before the header existed start directly with a record
+// and are replayed as before.
+//
+// Compaction does not hold up writers. It captures the registry (SnapshotCapture) and
+// starts a second journal, animals.journal.next, that receives every record appended
+// from then on alongside the current journal. The snapshot is written from the capture
+// without the journal's lock; then the next journal's header is set to the new
+// snapshot, synced, and the snapshot and the next journal are renamed into place in
+// that order. A crash before the first rename leaves the old snapshot and its complete
+// journal; a crash between the renames leaves the new snapshot and a next journal that
+// matches it, which replay picks up. saveAsync runs a save on a background thread.
+//
+// A failed append is not reported by the setter or intake that caused it. The journal
+// stops appending, and the next compaction rewrites the snapshot and then fails with
+// that error, so the caller of save, saveAsync or compact reports it.
+//
+// Locks are always taken in the order compactLock, registry, journal. Registry events
+// arrive with the registry's lock held, and compact and replay take it before the
+// journal's.
+public class AnimalJournal implements RegistryListener {
+
+    // Journal header: magic "GRSJ", snapshot length, snapshot CRC32C
+    private static final int MAGIC = 0x4752534A;
+
+    // Snapshot length in the header of a next journal until its snapshot is written
+    private static final long NO_SNAPSHOT = -1;
+
+    // Record types
+    private static final byte INTAKE = 1;
+    private static final byte UPDATE = 2;
+
+    // Compact once this many records have been appended since the last snapshot
+    public static final int COMPACT_AFTER_RECORDS = 10_000;
+
+    private final Path journalPath;
+    private final Path nextJournalPath;
+    private final Path snapshotPath;
+    private final AnimalRegistry registry;
+
+    // Held for a whole compaction, before the registry's and the journal's locks
+    private final Object compactLock = new Object();
+
+    // Runs saveAsync requests one at a time
+    private final ExecutorService saver = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "journal-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private CompletableFuture<Integer> lastSave = CompletableFuture.completedFuture(0);
+
+    private FileOutputStream file;
+    private DataOutputStream out;
+    private int recordCount;
+    private boolean baselineCurrent;
+    private boolean replaying;
+
+    // First append failure since the last compaction, reported by the next one
+    private IOException appendFailure;
+
+    // Length and checksum of the snapshot the journal applies to, written as its header
+    private long snapshotLength;
+    private int snapshotChecksum;
+
+    // Journal for the snapshot a running compaction is writing, or null; it stops being
+    // current if an append to it fails or the registry is replaced meanwhile
+    private FileOutputStream nextFile;
+    private DataOutputStream nextOut;
+    private int nextRecordCount;
+    private boolean nextCurrent;
+
+    public AnimalJournal(AnimalRegistry registry, Path snapshotPath, Path journalPath) {
+        this.registry = registry;
+        this.snapshotPath = snapshotPath;
+        this.journalPath = journalPath;
+        this.nextJournalPath = journalPath.resolveSibling(journalPath.getFileName() + ".next");
+        registry.addRegistryListener(this);
+    }
+
+    // Number of records appended since the last compaction
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    // True when the snapshot plus journal describe the current animals
+    public synchronized boolean isBaselineCurrent() {
+        return baselineCurrent;
+    }
+
+    // Flushes appended records to disk, compacting first when the journal has grown
+    // past COMPACT_AFTER_RECORDS or the snapshot no longer matches. Returns the number
+    // of records in the journal, or -1 if a compaction was done instead.
+    public int save() throws IOException {
+        synchronized (this) {
+            if (baselineCurrent && appendFailure == null && recordCount < COMPACT_AFTER_RECORDS) {
+                if (out != null) {
+                    out.flush();
+                    file.getFD().sync();
+                }
+                return recordCount;
+            }
+        }
+        compact();
+        return -1;
+    }
+
+    // Runs save() on the journal's background thread; saves run one at a time in the
+    // order they were requested. The future fails with an UncheckedIOException if the
+    // save fails.
+    public synchronized CompletableFuture<Integer> saveAsync() {
+        lastSave = CompletableFuture.supplyAsync(() -> {
+            try {
+                return save();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, saver);
+        return lastSave;
+    }
+
+    // Waits until every requested background save has finished, successfully or not
+    public void awaitIdle() {
+        CompletableFuture<Integer> pending;
+        synchronized (this) {
+            pending = lastSave;
+        }
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            // The failure was reported to whoever requested that save
+        }
+    }
+
+    // Writes the current animals to the snapshot and starts a journal for it; see the
+    // class comment. Only the capture and the final renames hold the journal's lock.
+    // If an append failed before it started, the compaction still completes, which
+    // repairs the journal, and then throws that failure.
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            IOException failure;
+            synchronized (this) {
+                failure = appendFailure;
+                appendFailure = null;
+            }
+            try {
+                compactLocked();
+            } catch (IOException | RuntimeException e) {
+                if (failure != null) {
+                    // Still unreported: keep it for the next compaction
+                    synchronized (this) {
+                        if (appendFailure == null) {
+                            appendFailure = failure;
+                        }
+                    }
+                    e.addSuppressed(failure);
+                }
+                throw e;
+            }
+            if (failure != null) {
+                throw new IOException("Journal write failed, so the snapshot was rewritten: "
+                        + failure.getMessage(), failure);
+            }
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        SnapshotCapture capture;
+        synchronized (registry) {
+            synchronized (this) {
+                capture = SnapshotCapture.of(registry);
+                try {
+                    openNextJournal();
+                } catch (IOException e) {
+                    capture.close();
+                    throw e;
+                }
+            }
+        }
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        long length;
+        int checksum;
+        try (SnapshotCapture source = capture) {
+            AnimalLoader.save(temp, source);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            length = Files.size(temp);
+            checksum = checksum(temp);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                closeNextJournal();
+            }
+            Files.deleteIfExists(nextJournalPath);
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        synchronized (this) {
+            boolean current = nextCurrent;
+            closeNextJournal();
+            try (FileChannel channel = FileChannel.open(nextJournalPath, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(12).putLong(length).putInt(checksum);
+                header.flip();
+                channel.write(header, 4);
+                channel.force(true);
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            closeJournal();
+            Files.move(nextJournalPath, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            snapshotLength = length;
+            snapshotChecksum = checksum;
+            recordCount = nextRecordCount;
+            // Appends go on to the renamed next journal. If it missed a record, or the
+            // registry was replaced while the snapshot was written, compact again next save.
+            baselineCurrent = current;
+        }
+    }
+
+    // Replays the journal onto a registry that was just loaded from the snapshot.
+    // A truncated final record (from a crash mid-write) ends the replay. Returns the
+    // number of records applied, or -1 if the journal belongs to another snapshot and
+    // was ignored; the next save then compacts and removes it. Takes the registry's lock
+    // before the journal's, as compact() does, so intakes wait for the replay.
+    public int replay() throws IOException {
+        synchronized (compactLock) {
+            synchronized (registry) {
+                synchronized (this) {
+                    return replayLocked();
+                }
+            }
+        }
+    }
+
+    private int replayLocked() throws IOException {
+        closeJournal();
+        appendFailure = null;
+        baselineCurrent = false;
+        snapshotLength = Files.exists(snapshotPath) ? Files.size(snapshotPath) : 0;
+        snapshotChecksum = Files.exists(snapshotPath) ? checksum(snapshotPath) : 0;
+        if (Files.exists(nextJournalPath) && nextOut == null) {
+            if (headerMatches(nextJournalPath)) {
+                // A compaction renamed the snapshot but not its journal; finish it
+                Files.move(nextJournalPath, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                // Left by a compaction that stopped before its snapshot was renamed
+                Files.delete(nextJournalPath);
+            }
+        }
+        int applied = 0;
+        boolean complete = true;
+        replaying = true;
+        try {
+            if (Files.exists(journalPath)) {
+                try (InputStream stream = Files.newInputStream(journalPath);
+                     DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+                    in.mark(4);
+                    if (in.read() == (MAGIC >>> 24)) {
+                        in.reset();
+                        if (in.readInt() != MAGIC) {
+                            throw new IOException("Corrupt journal header");
+                        }
+                        if (in.readLong() != snapshotLength || in.readInt() != snapshotChecksum) {
+                            return -1;
+                        }
+                    } else {
+                        in.reset();
+                    }
+                    while (true) {
+                        int type = in.read();
+                        if (type < 0) {
+                            break;
+                        }
+                        if (type == INTAKE) {
+                            registry.add(AnimalLoader.parseLine(in.readUTF()));
+                        } else if (type == UPDATE) {
+                            applyUpdate(in.readUTF(), in.readUTF(), in.readUTF(),
+                                    in.readBoolean() ? in.readUTF() : null);
+                        } else {
+                            throw new IOException("Corrupt journal record type " + type);
+                        }
+                        applied++;
+                    }
+                } catch (EOFException e) {
+                    complete = false;
+                }
+            }
+        } finally {
+            replaying = false;
+        }
+        recordCount = applied;
+        // A torn journal cannot be appended to safely, so the next save compacts
+        baselineCurrent = complete;
+        return applied;
+    }
+
+    @Override
+    public synchronized void animalAdded(RescueAnimal animal) {
+        append(out -> {
+            out.writeByte(INTAKE);
+            out.writeUTF(AnimalLoader.formatLine(animal));
+        });
+    }
+
+    @Override
+    public synchronized void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        // Identify the animal as it was before this change
+        String type = field.equals("type")
+                ? AnimalRegistry.key(oldValue != null ? (String) oldValue : animal.getClass().getSimpleName())
+                : AnimalRegistry.typeKey(animal);
+        String name = field.equals("name") ? (String) oldValue : animal.getName();
+        append(out -> {
+            out.writeByte(UPDATE);
+            out.writeUTF(type);
+            out.writeUTF(name == null ? "" : name);
+            out.writeUTF(field);
+            out.writeBoolean(newValue != null);
+            if (newValue != null) {
+                out.writeUTF(String.valueOf(newValue));
+            }
+        });
+    }
+
+    private interface Record {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    // Appends a record to the journal while it matches the snapshot, and to the next
+    // journal while a compaction runs
+    private void append(Record record) {
+        if (replaying) {
+            return;
+        }
+        if (baselineCurrent) {
+            try {
+                openJournal();
+                record.writeTo(out);
+                recordCount++;
+            } catch (IOException e) {
+                appendFailed(e);
+            }
+        }
+        if (nextCurrent) {
+            try {
+                record.writeTo(nextOut);
+                nextRecordCount++;
+            } catch (IOException e) {
+                // The next journal is incomplete; the next save compacts again
+                nextCurrent = false;
+            }
+        }
+    }
+
+    // The registry was loaded from somewhere else, so the snapshot is out of date
+    @Override
+    public synchronized void registryReplaced() {
+        if (!replaying) {
+            baselineCurrent = false;
+            nextCurrent = false;
+        }
+    }
+
+    // Closes the journal file
+    public synchronized void close() throws IOException {
+        closeJournal();
+    }
+
+    // Opens the journal for appending, starting a new one with the snapshot header
+    private void openJournal() throws IOException {
+        if (out == null) {
+            boolean fresh = !Files.exists(journalPath) || Files.size(journalPath) == 0;
+            file = new FileOutputStream(journalPath.toFile(), true);
+            out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeLong(snapshotLength);
+                out.writeInt(snapshotChecksum);
+            }
+        }
+    }
+
+    // Starts the next journal with a header that matches no snapshot until compact()
+    // fills it in
+    private void openNextJournal() throws IOException {
+        nextFile = new FileOutputStream(nextJournalPath.toFile());
+        nextOut = new DataOutputStream(new BufferedOutputStream(nextFile, 64 * 1024));
+        nextOut.writeInt(MAGIC);
+        nextOut.writeLong(NO_SNAPSHOT);
+        nextOut.writeInt(0);
+        nextRecordCount = 0;
+        nextCurrent = true;
+    }
+
+    private void closeNextJournal() throws IOException {
+        nextCurrent = false;
+        if (nextOut != null) {
+            try {
+                nextOut.close();
+            } finally {
+                nextOut = null;
+                nextFile = null;
+            }
+        }
+    }
+
+    // True if a journal starts with a header naming the current snapshot
+    private boolean headerMatches(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return in.readInt() == MAGIC && in.readLong() == snapshotLength && in.readInt() == snapshotChecksum;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static int checksum(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private void closeJournal() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } finally {
+                out = null;
+                file = null;
+            }
+        }
+    }
+
+    // A failed append leaves the journal incomplete; the next save compacts and reports it
+    private void appendFailed(IOException e) {
+        if (appendFailure == null) {
+            appendFailure = e;
+        } else {
+            appendFailure.addSuppressed(e);
+        }
+        baselineCurrent = false;
+    }
+
+    // Applies one replayed field change to the animal it names
+    private void applyUpdate(String type, String name, String field, String value) throws IOException {
+        RescueAnimal animal = registry.findByNameAndType(name, type);
+        if (animal == null) {
+            throw new IOException("Journal refers to unknown " + type + " '" + name + "'");
+        }
+        switch (field) {
+            case "id": animal.setId(value); break;
+            case "name": animal.setName(value); break;
+            case "type": animal.setType(value); break;
+            case "gender": animal.setGender(value); break;
+            case "age": animal.setAge(Integer.parseInt(value)); break;
+            case "weight": animal.setWeight(Float.parseFloat(value)); break;
+            case "acquisitionDate": animal.setAcquisitionDate(value); break;
+            case "acquisitionCountry": animal.setAcquisitionSource(value); break;
+            case "trainingStatus": animal.setTrainingStatus(value); break;
+            case "reserved": animal.setReserved(Boolean.parseBoolean(value)); break;
+            case "inServiceCountry": animal.setInServiceCountry(value); break;
+            case "breed": ((Dog) animal).setBreed(value); break;
+            case "species": ((Monkey) animal).setSpecies(value); break;
+            case "tailLength": ((Monkey) animal).setTailLength(Float.parseFloat(value)); break;
+            case "height": ((Monkey) animal).setHeight(Float.parseFloat(value)); break;
+            case "bodyLength": ((Monkey) animal).setBodyLength(Float.parseFloat(value)); break;
+            default: throw new IOException("Journal refers to unknown field '" + field + "'");
+        }
+    }
+}
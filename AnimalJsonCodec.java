@@ -0,0 +1,916 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Hand-written streaming JSON codec for Dog and Monkey, in the field names used by the
+// web backend's dogs.json and monkeys.json (webapp/backend), including the "id" its
+// models require and "acquisitionLocation" for the acquisition country.
+//
+// Writer encodes straight into one reusable byte buffer (UTF-8, no intermediate Strings
+// for field names, ints or booleans) and hands full buffers to the stream. Reader pulls
+// bytes through a reusable buffer and fills the fields of one animal at a time, so no
+// tree of maps and lists is built. Arrays are read and written element by element,
+// which keeps import and export of millions of animals in constant memory.
+//
+// On input, "id" is kept on the animal, "acquisitionCountry" is accepted as well as
+// "acquisitionLocation", unknown fields are skipped, and an object without a "type" is a
+// Monkey if it has a species and a Dog otherwise, unless the caller says which one it
+// expects. Integer fields accept integral values such as 3.0 and reject anything that
+// does not fit the field.
+public class AnimalJsonCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Longest string value the reader accepts
+    public static final int MAX_STRING_LENGTH = 64 * 1024;
+
+    private AnimalJsonCodec() {}
+
+    // Writes every animal to the file as one JSON array; returns the number written.
+    // Animals without an id get the next free "D001"/"M001"-style id first. The array is
+    // written to a temporary file that then atomically replaces the target, so readers
+    // never see a partly written file.
+    @SafeVarargs
+    public static long exportArray(Path path, Iterable<? extends RescueAnimal>... lists) throws IOException {
+        assignIds(lists);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        long count = 0;
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             Writer writer = new Writer(file)) {
+            writer.beginArray();
+            for (Iterable<? extends RescueAnimal> list : lists) {
+                for (RescueAnimal animal : list) {
+                    writer.animal(animal);
+                    count++;
+                }
+            }
+            writer.endArray();
+            writer.flush();
+            file.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    // Gives every animal without an id one not used by any of the others, so an export
+    // meets the web models' required, unique id. The id is set through setId, so the
+    // journal and the snapshot files keep it and later exports, after a restart too,
+    // repeat it.
+    @SafeVarargs
+    public static void assignIds(Iterable<? extends RescueAnimal>... lists) {
+        Set<String> used = new HashSet<>();
+        for (Iterable<? extends RescueAnimal> list : lists) {
+            for (RescueAnimal animal : list) {
+                if (animal.getId() != null) {
+                    used.add(animal.getId());
+                }
+            }
+        }
+        int next = 1;
+        for (Iterable<? extends RescueAnimal> list : lists) {
+            for (RescueAnimal animal : list) {
+                if (animal.getId() == null) {
+                    String prefix = animal instanceof Monkey ? "M" : "D";
+                    String id;
+                    do {
+                        id = prefix + String.format("%03d", next++);
+                    } while (!used.add(id));
+                    animal.setId(id);
+                }
+            }
+        }
+    }
+
+    // Reads a JSON array of animals from the file, passing each one to the consumer as
+    // soon as it is parsed; returns the number read
+    public static long importArray(Path path, Consumer<? super RescueAnimal> consumer) throws IOException {
+        try (Reader reader = new Reader(Files.newInputStream(path))) {
+            return reader.readArray(null, consumer);
+        }
+    }
+
+    // Streaming JSON writer with the structure methods the API needs
+    public static class Writer implements Closeable, Flushable {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int position;
+
+        // Whether the next value at each nesting level is the first one (no comma)
+        private boolean[] first = new boolean[16];
+        private int depth;
+        private boolean afterName;
+
+        // Reused for float formatting
+        private final StringBuilder number = new StringBuilder(24);
+
+        public Writer(OutputStream out) {
+            this(out, BUFFER_SIZE);
+        }
+
+        public Writer(OutputStream out, int bufferSize) {
+            this.out = out;
+            this.buffer = new byte[Math.max(64, bufferSize)];
+        }
+
+        public Writer beginArray() throws IOException {
+            return openBracket('[');
+        }
+
+        public Writer endArray() throws IOException {
+            return closeBracket(']');
+        }
+
+        public Writer beginObject() throws IOException {
+            return openBracket('{');
+        }
+
+        public Writer endObject() throws IOException {
+            return closeBracket('}');
+        }
+
+        // Field name inside an object; the next call writes its value
+        public Writer name(String name) throws IOException {
+            separate();
+            string(name);
+            put((byte) ':');
+            afterName = true;
+            return this;
+        }
+
+        public Writer value(String value) throws IOException {
+            separate();
+            if (value == null) {
+                ascii("null");
+            } else {
+                string(value);
+            }
+            return this;
+        }
+
+        public Writer value(long value) throws IOException {
+            separate();
+            integer(value);
+            return this;
+        }
+
+        public Writer value(float value) throws IOException {
+            separate();
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                ascii("null");
+                return this;
+            }
+            number.setLength(0);
+            number.append(value);
+            ensure(number.length());
+            for (int i = 0; i < number.length(); i++) {
+                buffer[position++] = (byte) number.charAt(i);
+            }
+            return this;
+        }
+
+        public Writer value(boolean value) throws IOException {
+            separate();
+            ascii(value ? "true" : "false");
+            return this;
+        }
+
+        // One Dog or Monkey as a JSON object
+        public Writer animal(RescueAnimal animal) throws IOException {
+            beginObject();
+            boolean monkey = animal instanceof Monkey;
+            if (animal.getId() != null) {
+                name("id").value(animal.getId());
+            }
+            name("type").value(monkey ? "Monkey" : "Dog");
+            name("name").value(animal.getName());
+            if (monkey) {
+                Monkey m = (Monkey) animal;
+                name("species").value(m.getSpecies());
+                name("tailLength").value(m.getTailLength());
+                name("height").value(m.getHeight());
+                name("bodyLength").value(m.getBodyLength());
+            } else {
+                name("breed").value(((Dog) animal).getBreed());
+            }
+            name("gender").value(animal.getGender());
+            name("age").value(animal.getAge());
+            name("weight").value(animal.getWeight());
+            name("acquisitionDate").value(animal.getAcquisitionDate());
+            name("acquisitionLocation").value(animal.getAcquisitionCountry());
+            name("trainingStatus").value(animal.getTrainingStatus());
+            name("reserved").value(animal.getReserved());
+            name("inServiceCountry").value(animal.getInServiceCountry());
+            return endObject();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+            out.close();
+        }
+
+        private Writer openBracket(char bracket) throws IOException {
+            separate();
+            put((byte) bracket);
+            if (++depth == first.length) {
+                first = Arrays.copyOf(first, depth * 2);
+            }
+            first[depth] = true;
+            return this;
+        }
+
+        private Writer closeBracket(char bracket) throws IOException {
+            depth--;
+            put((byte) bracket);
+            return this;
+        }
+
+        // Writes the comma before a value unless it is the first or follows a name
+        private void separate() throws IOException {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            if (depth > 0) {
+                if (first[depth]) {
+                    first[depth] = false;
+                } else {
+                    put((byte) ',');
+                }
+            }
+        }
+
+        private void string(String value) throws IOException {
+            put((byte) '"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                    put((byte) c);
+                } else if (c == '"' || c == '\\') {
+                    ensure(2);
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x20) {
+                    escapeControl(c);
+                } else if (c < 0x800) {
+                    ensure(2);
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensure(4);
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    // Lone surrogates are written as a replacement character
+                    int codePoint = Character.isSurrogate(c) ? 0xFFFD : c;
+                    ensure(3);
+                    buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                }
+            }
+            put((byte) '"');
+        }
+
+        private void escapeControl(char c) throws IOException {
+            ensure(6);
+            buffer[position++] = '\\';
+            switch (c) {
+                case '\n': buffer[position++] = 'n'; break;
+                case '\r': buffer[position++] = 'r'; break;
+                case '\t': buffer[position++] = 't'; break;
+                case '\b': buffer[position++] = 'b'; break;
+                case '\f': buffer[position++] = 'f'; break;
+                default:
+                    buffer[position++] = 'u';
+                    buffer[position++] = '0';
+                    buffer[position++] = '0';
+                    buffer[position++] = (byte) Character.forDigit(c >> 4, 16);
+                    buffer[position++] = (byte) Character.forDigit(c & 0xF, 16);
+            }
+        }
+
+        private void integer(long value) throws IOException {
+            ensure(20);
+            if (value == Long.MIN_VALUE) {
+                ascii("-9223372036854775808");
+                return;
+            }
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            int start = position;
+            do {
+                buffer[position++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            for (int i = start, j = position - 1; i < j; i++, j--) {
+                byte swap = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = swap;
+            }
+        }
+
+        private void ascii(String text) throws IOException {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                buffer[position++] = (byte) text.charAt(i);
+            }
+        }
+
+        private void put(byte b) throws IOException {
+            if (position == buffer.length) {
+                drain();
+            }
+            buffer[position++] = b;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (position + bytes > buffer.length) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+
+    // Streaming pull parser for animals; malformed input throws IllegalArgumentException
+    public static class Reader implements Closeable {
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+        private long consumed;
+
+        // Reused while decoding strings and keys
+        private char[] chars = new char[256];
+        private final byte[] key = new byte[64];
+
+        // Whether nextName has already read a member of the current object
+        private boolean memberRead;
+
+        // Fields of the animal being read
+        private String id;
+        private String type;
+        private String name;
+        private String breed;
+        private String species;
+        private String gender;
+        private int age;
+        private float weight;
+        private float tailLength;
+        private float height;
+        private float bodyLength;
+        private String acquisitionDate;
+        private String acquisitionCountry;
+        private String trainingStatus;
+        private boolean reserved;
+        private String inServiceCountry;
+
+        public Reader(InputStream in) {
+            this(in, BUFFER_SIZE);
+        }
+
+        public Reader(InputStream in, int bufferSize) {
+            this.in = in;
+            this.buffer = new byte[Math.max(64, bufferSize)];
+        }
+
+        // Reads a JSON array of animals, passing each one to the consumer; defaultType
+        // ("Dog", "Monkey" or null to infer) applies to objects without a "type"
+        public long readArray(String defaultType, Consumer<? super RescueAnimal> consumer) throws IOException {
+            expect('[');
+            long count = 0;
+            if (peek() == ']') {
+                next();
+                return count;
+            }
+            while (true) {
+                consumer.accept(readAnimal(defaultType));
+                count++;
+                int c = next();
+                if (c == ']') {
+                    return count;
+                }
+                if (c != ',') {
+                    throw error("expected ',' or ']'");
+                }
+            }
+        }
+
+        // Reads the '{' that starts an object; members are then read with nextName
+        public void beginObject() throws IOException {
+            expect('{');
+            memberRead = false;
+        }
+
+        // Name of the next member of the current object (ASCII names up to 64 bytes), or
+        // null once its closing '}' has been read
+        public String nextName() throws IOException {
+            int c = next();
+            if (c == '}') {
+                return null;
+            }
+            if (memberRead) {
+                if (c != ',') {
+                    throw error("expected ',' or '}'");
+                }
+            } else {
+                position--;
+            }
+            memberRead = true;
+            int length = Math.min(readKey(), key.length);
+            expect(':');
+            return new String(key, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+        public boolean nextBoolean() throws IOException {
+            return readBoolean();
+        }
+
+        // Reads a JSON array of booleans, setting the bit of every true element; returns
+        // the number of elements
+        public int readBooleanArray(BitSet bits) throws IOException {
+            expect('[');
+            int count = 0;
+            if (peek() == ']') {
+                next();
+                return count;
+            }
+            while (true) {
+                if (readBoolean()) {
+                    bits.set(count);
+                }
+                count++;
+                int c = next();
+                if (c == ']') {
+                    return count;
+                }
+                if (c != ',') {
+                    throw error("expected ',' or ']'");
+                }
+            }
+        }
+
+        public long nextLong() throws IOException {
+            double value = readNumber(true);
+            if (value < Long.MIN_VALUE || value >= 0x1p63) {
+                throw error("number " + value + " is out of range");
+            }
+            return (long) value;
+        }
+
+        // Skips the value of a member that is not needed
+        public void skipValue() throws IOException {
+            skipAny();
+        }
+
+        // Reads one animal object; defaultType applies when the object has no "type"
+        public RescueAnimal readAnimal(String defaultType) throws IOException {
+            reset();
+            expect('{');
+            if (peek() == '}') {
+                next();
+            } else {
+                while (true) {
+                    readField();
+                    int c = next();
+                    if (c == '}') {
+                        break;
+                    }
+                    if (c != ',') {
+                        throw error("expected ',' or '}'");
+                    }
+                }
+            }
+            return build(defaultType);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void reset() {
+            id = type = name = breed = species = gender = null;
+            acquisitionDate = acquisitionCountry = trainingStatus = inServiceCountry = null;
+            age = 0;
+            weight = tailLength = height = bodyLength = 0f;
+            reserved = false;
+        }
+
+        private RescueAnimal build(String defaultType) {
+            String kind = type != null ? type : defaultType;
+            boolean monkey = kind != null ? kind.equalsIgnoreCase("Monkey") : species != null;
+            if (kind != null && !monkey && !kind.equalsIgnoreCase("Dog")) {
+                throw new IllegalArgumentException("unknown animal type '" + kind + "'");
+            }
+            if (name == null || name.trim().isEmpty()) {
+                throw new IllegalArgumentException("'name' is required");
+            }
+            RescueAnimal animal = monkey
+                    ? new Monkey(name, species, tailLength, height, bodyLength, gender, age, weight,
+                            acquisitionDate, acquisitionCountry, trainingStatus, reserved, inServiceCountry)
+                    : new Dog(name, breed, gender, age, weight, acquisitionDate, acquisitionCountry,
+                            trainingStatus, reserved, inServiceCountry);
+            animal.setId(id);
+            return animal;
+        }
+
+        // Reads "key": value, storing the value if the key is a known field
+        private void readField() throws IOException {
+            int length = readKey();
+            expect(':');
+            switch (length) {
+                case 2:
+                    if (is("id", length)) { id = readString(); return; }
+                    break;
+                case 3:
+                    if (is("age", length)) { age = readInt("age"); return; }
+                    break;
+                case 4:
+                    if (is("type", length)) { type = readString(); return; }
+                    if (is("name", length)) { name = readString(); return; }
+                    break;
+                case 5:
+                    if (is("breed", length)) { breed = readString(); return; }
+                    break;
+                case 6:
+                    if (is("gender", length)) { gender = readString(); return; }
+                    if (is("weight", length)) { weight = (float) readNumber(false); return; }
+                    if (is("height", length)) { height = (float) readNumber(false); return; }
+                    break;
+                case 7:
+                    if (is("species", length)) { species = readString(); return; }
+                    break;
+                case 8:
+                    if (is("reserved", length)) { reserved = readBoolean(); return; }
+                    break;
+                case 10:
+                    if (is("tailLength", length)) { tailLength = (float) readNumber(false); return; }
+                    if (is("bodyLength", length)) { bodyLength = (float) readNumber(false); return; }
+                    break;
+                case 14:
+                    if (is("trainingStatus", length)) { trainingStatus = readString(); return; }
+                    break;
+                case 15:
+                    if (is("acquisitionDate", length)) { acquisitionDate = readString(); return; }
+                    break;
+                case 16:
+                    if (is("inServiceCountry", length)) { inServiceCountry = readString(); return; }
+                    break;
+                case 18:
+                    if (is("acquisitionCountry", length)) { acquisitionCountry = readString(); return; }
+                    break;
+                case 19:
+                    if (is("acquisitionLocation", length)) { acquisitionCountry = readString(); return; }
+                    break;
+                default:
+                    break;
+            }
+            skipAny();
+        }
+
+        // Reads an object key into the key buffer; longer keys cannot be known fields and
+        // only their length is kept
+        private int readKey() throws IOException {
+            expect('"');
+            int length = 0;
+            while (true) {
+                int c = nextRaw();
+                if (c == '"') {
+                    return length;
+                }
+                if (c == '\\') {
+                    nextRaw();
+                    c = '?';
+                }
+                if (length < key.length) {
+                    key[length] = (byte) c;
+                }
+                length++;
+            }
+        }
+
+        // Reads an integer field, failing instead of wrapping when it does not fit an int
+        private int readInt(String field) throws IOException {
+            double value = readNumber(true);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw error("'" + field + "' is out of range");
+            }
+            return (int) value;
+        }
+
+        private boolean is(String field, int length) {
+            for (int i = 0; i < length; i++) {
+                if (key[i] != field.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String readString() throws IOException {
+            int c = peek();
+            if (c == 'n') {
+                literal("null");
+                return null;
+            }
+            expect('"');
+            int length = 0;
+            while (true) {
+                c = nextRaw();
+                if (c == '"') {
+                    return new String(chars, 0, length);
+                }
+                if (length + 2 > chars.length) {
+                    if (chars.length >= MAX_STRING_LENGTH) {
+                        throw error("string longer than " + MAX_STRING_LENGTH + " characters");
+                    }
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+                if (c == '\\') {
+                    chars[length++] = escape();
+                } else if (c < 0x80) {
+                    chars[length++] = (char) c;
+                } else {
+                    int codePoint = decodeUtf8(c);
+                    length += Character.toChars(codePoint, chars, length);
+                }
+            }
+        }
+
+        private char escape() throws IOException {
+            int c = nextRaw();
+            switch (c) {
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 't': return '\t';
+                case 'b': return '\b';
+                case 'f': return '\f';
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(nextRaw(), 16);
+                        if (digit < 0) {
+                            throw error("malformed \\u escape");
+                        }
+                        value = value * 16 + digit;
+                    }
+                    return (char) value;
+                default: return (char) c;
+            }
+        }
+
+        private int decodeUtf8(int lead) throws IOException {
+            int extra;
+            int codePoint;
+            if ((lead & 0xE0) == 0xC0) {
+                extra = 1;
+                codePoint = lead & 0x1F;
+            } else if ((lead & 0xF0) == 0xE0) {
+                extra = 2;
+                codePoint = lead & 0x0F;
+            } else if ((lead & 0xF8) == 0xF0) {
+                extra = 3;
+                codePoint = lead & 0x07;
+            } else {
+                return 0xFFFD;
+            }
+            for (int i = 0; i < extra; i++) {
+                codePoint = (codePoint << 6) | (nextRaw() & 0x3F);
+            }
+            return Character.isValidCodePoint(codePoint) ? codePoint : 0xFFFD;
+        }
+
+        // Reads a number (or null, read as 0) without building a String in the common
+        // case: up to 18 digits and a small decimal exponent. Anything else falls back to
+        // Double.parseDouble.
+        private double readNumber(boolean integral) throws IOException {
+            int c = peek();
+            if (c == 'n') {
+                literal("null");
+                return 0;
+            }
+            int length = 0;
+            while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+                if (length == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+                chars[length++] = (char) nextRaw();
+                c = peekRaw();
+            }
+            if (length == 0) {
+                throw error("expected a number");
+            }
+            boolean negative = chars[0] == '-';
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean fraction = false;
+            for (int i = negative ? 1 : 0; i < length; i++) {
+                char d = chars[i];
+                if (d == '.' && !fraction) {
+                    fraction = true;
+                } else if (d >= '0' && d <= '9' && digits < 18) {
+                    mantissa = mantissa * 10 + (d - '0');
+                    digits++;
+                    if (fraction) {
+                        scale++;
+                    }
+                } else {
+                    return parseSlow(length, integral);
+                }
+            }
+            if (digits == 0) {
+                throw error("expected a number");
+            }
+            double value;
+            if (integral) {
+                // An integral value written with a fraction (3.0) is accepted
+                long unit = LONG_POWERS_OF_TEN[scale];
+                if (mantissa % unit != 0) {
+                    throw error("expected an integer");
+                }
+                value = mantissa / unit;
+            } else if (mantissa < (1 << 24) && scale <= 10) {
+                // Both operands are exact floats, so one float division rounds correctly
+                value = (float) mantissa / FLOAT_POWERS_OF_TEN[scale];
+            } else {
+                return parseSlow(length, false);
+            }
+            return negative ? -value : value;
+        }
+
+        private double parseSlow(int length, boolean integral) {
+            String text = new String(chars, 0, length);
+            double value;
+            try {
+                value = integral ? Double.parseDouble(text) : Float.parseFloat(text);
+            } catch (NumberFormatException e) {
+                throw error("malformed number '" + text + "'");
+            }
+            if (integral && (Double.isInfinite(value) || value != Math.rint(value))) {
+                throw error("expected an integer");
+            }
+            return value;
+        }
+
+        private boolean readBoolean() throws IOException {
+            int c = peek();
+            if (c == 't') {
+                literal("true");
+                return true;
+            }
+            if (c == 'f') {
+                literal("false");
+                return false;
+            }
+            if (c == 'n') {
+                literal("null");
+                return false;
+            }
+            throw error("expected true or false");
+        }
+
+        // Skips any JSON value, including nested objects and arrays
+        private void skipAny() throws IOException {
+            int c = peek();
+            if (c == '"') {
+                next();
+                while ((c = nextRaw()) != '"') {
+                    if (c == '\\') {
+                        nextRaw();
+                    }
+                }
+            } else if (c == '{' || c == '[') {
+                next();
+                int nesting = 1;
+                while (nesting > 0) {
+                    c = nextRaw();
+                    if (c == '"') {
+                        while ((c = nextRaw()) != '"') {
+                            if (c == '\\') {
+                                nextRaw();
+                            }
+                        }
+                    } else if (c == '{' || c == '[') {
+                        nesting++;
+                    } else if (c == '}' || c == ']') {
+                        nesting--;
+                    }
+                }
+            } else if (c == 't') {
+                literal("true");
+            } else if (c == 'f') {
+                literal("false");
+            } else if (c == 'n') {
+                literal("null");
+            } else {
+                readNumber(false);
+            }
+        }
+
+        private void literal(String text) throws IOException {
+            next();
+            for (int i = 1; i < text.length(); i++) {
+                if (nextRaw() != text.charAt(i)) {
+                    throw error("expected " + text);
+                }
+            }
+        }
+
+        private void expect(char c) throws IOException {
+            if (next() != c) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        // Next non-whitespace byte without consuming it
+        private int peek() throws IOException {
+            while (true) {
+                int c = peekRaw();
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    position++;
+                } else if (c < 0) {
+                    throw new EOFException("unexpected end of JSON input");
+                } else {
+                    return c;
+                }
+            }
+        }
+
+        // Next non-whitespace byte
+        private int next() throws IOException {
+            peek();
+            return buffer[position++] & 0xFF;
+        }
+
+        private int peekRaw() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position] & 0xFF;
+        }
+
+        private int nextRaw() throws IOException {
+            if (position == limit && !fill()) {
+                throw new EOFException("unexpected end of JSON input");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            consumed += limit;
+            position = 0;
+            limit = Math.max(0, in.read(buffer, 0, buffer.length));
+            return limit > 0;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("JSON " + message + " at byte " + (consumed + position));
+        }
+    }
+
+    private static final long[] LONG_POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+        10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+        1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+}
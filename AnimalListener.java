@@ -0,0 +1,6 @@
+// Callback for components that need to react when a RescueAnimal's fields change
+// (indexes, reservation queues, journals). Listeners are invoked on the thread
+// that called the setter, after the new value has been stored.
+public interface AnimalListener {
+    void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue);
+}
@@ -0,0 +1,276 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Streaming loader (and writer) for the animals.txt CSV format. Lines are read through a
+// BufferedReader and split on commas without regular expressions. Large files are
+// read in chunks that are parsed in parallel on the fork-join pool and merged back
+// in file order. Lines that fail to parse are reported instead of aborting the load.
+//
+// A record may end with one extra column, the animal's web frontend id ("D001"); it is
+// written only for animals that have one, so files without ids read as before.
+public class AnimalLoader {
+
+    // Files at least this large are parsed in parallel
+    public static final long PARALLEL_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
+    // Animals read from a snapshot source at a time while saving
+    private static final int SAVE_BLOCK = 8192;
+
+    // Number of lines handed to one parse task
+    private static final int CHUNK_LINES = 16 * 1024;
+
+    // Lines below this count are parsed directly by a task instead of being split further
+    private static final int TASK_LINES = 2048;
+
+    static final int DOG_FIELDS = 11;
+    static final int MONKEY_FIELDS = 14;
+
+    // Animals and parse errors produced by a load
+    public static class Result {
+        private final List<Dog> dogs = new ArrayList<>();
+        private final List<Monkey> monkeys = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        public List<Dog> getDogs() { return dogs; }
+        public List<Monkey> getMonkeys() { return monkeys; }
+
+        // One message per rejected line, e.g. "line 12: expected 11 fields but found 9"
+        public List<String> getErrors() { return errors; }
+
+        private void merge(Result other) {
+            dogs.addAll(other.dogs);
+            monkeys.addAll(other.monkeys);
+            errors.addAll(other.errors);
+        }
+    }
+
+    // Loads every animal in the file, choosing sequential or parallel parsing by file size
+    public static Result load(Path path) throws IOException {
+        boolean parallel = Files.size(path) >= PARALLEL_THRESHOLD_BYTES;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parallel ? loadParallel(reader) : loadSequential(reader);
+        }
+    }
+
+    // Parses every line on the calling thread
+    public static Result loadSequential(BufferedReader reader) throws IOException {
+        Result result = new Result();
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            parseInto(line, ++lineNumber, result);
+        }
+        return result;
+    }
+
+    // Reads chunks of lines and parses them on the common fork-join pool
+    public static Result loadParallel(BufferedReader reader) throws IOException {
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(CHUNK_LINES);
+        long firstLine = 1;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            chunk.add(line);
+            if (chunk.size() == CHUNK_LINES) {
+                tasks.add(ForkJoinPool.commonPool().submit(new ParseTask(chunk, 0, chunk.size(), firstLine)));
+                chunk = new ArrayList<>(CHUNK_LINES);
+                firstLine = lineNumber + 1;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            tasks.add(ForkJoinPool.commonPool().submit(new ParseTask(chunk, 0, chunk.size(), firstLine)));
+        }
+
+        // Join in submission order so the animals keep their file order
+        Result result = new Result();
+        for (ForkJoinTask<Result> task : tasks) {
+            result.merge(task.join());
+        }
+        return result;
+    }
+
+    // Parses one line, adding the animal or an error message to the result
+    static void parseInto(String line, long lineNumber, Result result) {
+        if (line.isEmpty()) {
+            return;
+        }
+        try {
+            RescueAnimal animal = parseLine(line);
+            if (animal instanceof Dog) {
+                result.dogs.add((Dog) animal);
+            } else {
+                result.monkeys.add((Monkey) animal);
+            }
+        } catch (IllegalArgumentException e) {
+            result.errors.add("line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    // Parses a Dog or Monkey record; throws IllegalArgumentException for malformed lines
+    public static RescueAnimal parseLine(String line) {
+        int comma = line.indexOf(',');
+        String recordType = comma < 0 ? line : line.substring(0, comma);
+
+        RescueAnimal animal;
+        String[] t;
+        if (recordType.equalsIgnoreCase("Dog")) {
+            t = splitFields(line, DOG_FIELDS, DOG_FIELDS + 1);
+            animal = new Dog(t[1], t[2], t[3], Integer.parseInt(t[4]),
+                    Float.parseFloat(t[5]), t[6], t[7], t[8],
+                    Boolean.parseBoolean(t[9]), t[10]);
+        } else if (recordType.equalsIgnoreCase("Monkey")) {
+            t = splitFields(line, MONKEY_FIELDS, MONKEY_FIELDS + 1);
+            animal = new Monkey(t[1], t[2], Float.parseFloat(t[3]),
+                    Float.parseFloat(t[4]), Float.parseFloat(t[5]), t[6],
+                    Integer.parseInt(t[7]), Float.parseFloat(t[8]), t[9],
+                    t[10], t[11], Boolean.parseBoolean(t[12]), t[13]);
+        } else {
+            throw new IllegalArgumentException("unknown record type '" + recordType + "'");
+        }
+        // Optional last column: the web frontend id
+        if (t.length > (animal instanceof Dog ? DOG_FIELDS : MONKEY_FIELDS)) {
+            animal.setId(t[t.length - 1]);
+        }
+        return animal;
+    }
+
+    // Formats a Dog or Monkey as an animals.txt line (the inverse of parseLine)
+    public static String formatLine(RescueAnimal animal) {
+        StringBuilder line = new StringBuilder(128);
+        appendLine(line, animal);
+        return line.toString();
+    }
+
+    // Appends the animals.txt line for a Dog or Monkey, without a line break
+    public static void appendLine(StringBuilder line, RescueAnimal animal) {
+        if (animal instanceof Monkey) {
+            Monkey monkey = (Monkey) animal;
+            line.append("Monkey,").append(monkey.getName()).append(',').append(monkey.getSpecies())
+                    .append(',').append(monkey.getTailLength()).append(',').append(monkey.getHeight())
+                    .append(',').append(monkey.getBodyLength()).append(',').append(monkey.getGender())
+                    .append(',').append(monkey.getAge()).append(',').append(monkey.getWeight())
+                    .append(',').append(monkey.getAcquisitionDate()).append(',').append(monkey.getAcquisitionCountry())
+                    .append(',').append(monkey.getTrainingStatus()).append(',').append(monkey.getReserved())
+                    .append(',').append(monkey.getInServiceCountry());
+        } else {
+            Dog dog = (Dog) animal;
+            line.append("Dog,").append(dog.getName()).append(',').append(dog.getBreed())
+                    .append(',').append(dog.getGender()).append(',').append(dog.getAge())
+                    .append(',').append(dog.getWeight()).append(',').append(dog.getAcquisitionDate())
+                    .append(',').append(dog.getAcquisitionCountry()).append(',').append(dog.getTrainingStatus())
+                    .append(',').append(dog.getReserved()).append(',').append(dog.getInServiceCountry());
+        }
+        if (animal.getId() != null) {
+            line.append(',').append(animal.getId());
+        }
+    }
+
+    // Writes every animal to the file in animals.txt format, dogs first
+    public static void save(Path path, List<Dog> dogs, List<Monkey> monkeys) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(128);
+            for (Dog dog : dogs) {
+                writeLine(writer, line, dog);
+            }
+            for (Monkey monkey : monkeys) {
+                writeLine(writer, line, monkey);
+            }
+        }
+    }
+
+    // Writes the animals of a snapshot source in animals.txt format, dogs first, reading
+    // them a block at a time
+    public static void save(Path path, CompressedSnapshot.Source source) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(128);
+            for (int from = 0; from < source.dogCount(); from += SAVE_BLOCK) {
+                for (Dog dog : source.dogs(from, Math.min(source.dogCount(), from + SAVE_BLOCK))) {
+                    writeLine(writer, line, dog);
+                }
+            }
+            for (int from = 0; from < source.monkeyCount(); from += SAVE_BLOCK) {
+                for (Monkey monkey : source.monkeys(from, Math.min(source.monkeyCount(), from + SAVE_BLOCK))) {
+                    writeLine(writer, line, monkey);
+                }
+            }
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, StringBuilder line, RescueAnimal animal) throws IOException {
+        line.setLength(0);
+        appendLine(line, animal);
+        writer.append(line).append(System.lineSeparator());
+    }
+
+    // Splits a line on commas into exactly the expected number of fields
+    public static String[] splitFields(String line, int expected) {
+        return splitFields(line, expected, expected);
+    }
+
+    // Splits a line on commas into between min and max fields
+    static String[] splitFields(String line, int min, int max) {
+        String[] fields = new String[max];
+        int count = 0;
+        int start = 0;
+        int comma;
+        while ((comma = line.indexOf(',', start)) >= 0) {
+            if (count == max - 1) {
+                throw new IllegalArgumentException("expected " + max + " fields but found more");
+            }
+            fields[count++] = line.substring(start, comma);
+            start = comma + 1;
+        }
+        if (count < min - 1) {
+            throw new IllegalArgumentException("expected " + min + " fields but found " + (count + 1));
+        }
+        fields[count] = line.substring(start);
+        return count == max - 1 ? fields : Arrays.copyOf(fields, count + 1);
+    }
+
+    // Parses a range of lines, splitting the range in half until it is small enough
+    private static class ParseTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> lines;
+        private final int from;
+        private final int to;
+        private final long firstLine;
+
+        ParseTask(List<String> lines, int from, int to, long firstLine) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+            this.firstLine = firstLine;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= TASK_LINES) {
+                Result result = new Result();
+                for (int i = from; i < to; i++) {
+                    parseInto(lines.get(i), firstLine + i, result);
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            ParseTask left = new ParseTask(lines, from, mid, firstLine);
+            left.fork();
+            Result right = new ParseTask(lines, mid, to, firstLine).compute();
+            Result result = left.join();
+            result.merge(right);
+            return result;
+        }
+    }
+}
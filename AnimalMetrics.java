@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms for the Driver operations, plus collection sizes and
+// per-country reserved/available counts read from the availability view when a report
+// is made. Recording is a few LongAdder increments, so it is cheap enough for every call
+// and does not contend between threads.
+//
+// Reports are a console summary and the Prometheus text format (metrics.prom), where
+// each timer becomes a summary with p50/p90/p99/p999 quantiles.
+public class AnimalMetrics {
+
+    // Operation timers, named as they appear in the report
+    public static final String INTAKE = "intake";
+    public static final String RESERVE = "reserve";
+    public static final String SEARCH = "search";
+    public static final String LOAD = "load";
+    public static final String SAVE = "save";
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final AnimalRegistry registry;
+    private final AvailabilityView availability;
+    private final Map<String, Timer> timers = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+
+    public AnimalMetrics(AnimalRegistry registry, AvailabilityView availability) {
+        this.registry = registry;
+        this.availability = availability;
+        for (String name : new String[] { INTAKE, RESERVE, SEARCH, LOAD, SAVE }) {
+            timers.put(name, new Timer());
+        }
+        for (String name : new String[] { "intake_added", "intake_duplicate", "reserve_success",
+                "reserve_unavailable", "search_results", "load_errors", "save_errors" }) {
+            counters.put(name, new LongAdder());
+        }
+    }
+
+    // Records one call of an operation that took the given time
+    public void record(String operation, long nanos) {
+        timers.get(operation).record(nanos);
+    }
+
+    // Adds to a named counter, e.g. "reserve_success"
+    public void count(String counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    public Timer timer(String operation) {
+        return timers.get(operation);
+    }
+
+    public long counter(String counter) {
+        return counters.get(counter).sum();
+    }
+
+    // Log-linear latency histogram in the style of HdrHistogram: each power of two is
+    // split into SUB_BUCKETS linear buckets, so any recorded value is reported within
+    // 1/SUB_BUCKETS (12.5%) of its true value, from nanoseconds up to hours.
+    public static class Timer {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Timer() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets[bucket(value)].increment();
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        // Upper bound of the bucket holding the given quantile (0..1), or 0 if empty
+        public long quantileNanos(double quantile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets[i].sum();
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxNanos());
+                }
+            }
+            return maxNanos();
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            long base = (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+            return base + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+
+    // Human-readable summary for the console
+    public void printSummary() {
+        System.out.println("Operation        calls      mean ms       p50 ms       p99 ms       max ms");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            long calls = timer.count();
+            System.out.println(String.format(Locale.ROOT, "%-12s %9d %12.3f %12.3f %12.3f %12.3f", entry.getKey(), calls,
+                    calls == 0 ? 0 : timer.totalNanos() / 1e6 / calls, timer.quantileNanos(0.5) / 1e6,
+                    timer.quantileNanos(0.99) / 1e6, timer.maxNanos() / 1e6));
+        }
+        System.out.println();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            System.out.println(String.format(Locale.ROOT, "%-20s %d", entry.getKey(), entry.getValue().sum()));
+        }
+        System.out.println();
+        System.out.println("Dogs: " + registry.getDogs().size() + " | Monkeys: " + registry.getMonkeys().size());
+        printCountries("Dogs", AvailabilityView.DOG);
+        printCountries("Monkeys", AvailabilityView.MONKEY);
+    }
+
+    private void printCountries(String label, byte type) {
+        Map<String, Integer> available = availability.availableCountByCountry(type);
+        Map<String, Integer> reserved = availability.reservedCountByCountry(type);
+        for (String country : countries(available, reserved)) {
+            System.out.println("  " + label + " in " + country + ": " + available.getOrDefault(country, 0)
+                    + " available, " + reserved.getOrDefault(country, 0) + " reserved");
+        }
+    }
+
+    // Writes every metric in the Prometheus text exposition format
+    public void writePrometheus(Writer out) throws IOException {
+        out.write("# HELP grazioso_operation_seconds Latency of Driver operations.\n");
+        out.write("# TYPE grazioso_operation_seconds summary\n");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            String operation = entry.getKey();
+            for (double quantile : QUANTILES) {
+                sample(out, "grazioso_operation_seconds", "operation=\"" + operation + "\",quantile=\"" + quantile + "\"",
+                        timer.quantileNanos(quantile) / 1e9);
+            }
+            sample(out, "grazioso_operation_seconds_sum", "operation=\"" + operation + "\"", timer.totalNanos() / 1e9);
+            sample(out, "grazioso_operation_seconds_count", "operation=\"" + operation + "\"", timer.count());
+        }
+        out.write("# HELP grazioso_operation_max_seconds Slowest call of each Driver operation.\n");
+        out.write("# TYPE grazioso_operation_max_seconds gauge\n");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            sample(out, "grazioso_operation_max_seconds", "operation=\"" + entry.getKey() + "\"",
+                    entry.getValue().maxNanos() / 1e9);
+        }
+
+        out.write("# HELP grazioso_events_total Outcomes of Driver operations.\n");
+        out.write("# TYPE grazioso_events_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            sample(out, "grazioso_events_total", "event=\"" + entry.getKey() + "\"", entry.getValue().sum());
+        }
+
+        out.write("# HELP grazioso_animals Registered animals by type.\n");
+        out.write("# TYPE grazioso_animals gauge\n");
+        sample(out, "grazioso_animals", "type=\"dog\"", registry.getDogs().size());
+        sample(out, "grazioso_animals", "type=\"monkey\"", registry.getMonkeys().size());
+
+        out.write("# HELP grazioso_available_animals Unreserved in-service animals by type and in-service country.\n");
+        out.write("# TYPE grazioso_available_animals gauge\n");
+        countrySamples(out, "grazioso_available_animals", "dog", availability.availableCountByCountry(AvailabilityView.DOG));
+        countrySamples(out, "grazioso_available_animals", "monkey", availability.availableCountByCountry(AvailabilityView.MONKEY));
+        out.write("# HELP grazioso_reserved_animals Reserved animals by type and in-service country.\n");
+        out.write("# TYPE grazioso_reserved_animals gauge\n");
+        countrySamples(out, "grazioso_reserved_animals", "dog", availability.reservedCountByCountry(AvailabilityView.DOG));
+        countrySamples(out, "grazioso_reserved_animals", "monkey", availability.reservedCountByCountry(AvailabilityView.MONKEY));
+    }
+
+    // Writes the Prometheus text to a file, replacing it atomically
+    public void writePrometheus(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writePrometheus(out);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void countrySamples(Writer out, String metric, String type, Map<String, Integer> counts) throws IOException {
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            sample(out, metric, "type=\"" + type + "\",country=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+        }
+    }
+
+    private static void sample(Writer out, String metric, String labels, double value) throws IOException {
+        out.write(metric);
+        out.write('{');
+        out.write(labels);
+        out.write("} ");
+        out.write(value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value));
+        out.write('\n');
+    }
+
+    // Escapes a label value for the Prometheus text format
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static Iterable<String> countries(Map<String, Integer> first, Map<String, Integer> second) {
+        Map<String, Boolean> all = new LinkedHashMap<>();
+        first.keySet().forEach(country -> all.put(country, Boolean.TRUE));
+        second.keySet().forEach(country -> all.put(country, Boolean.TRUE));
+        return all.keySet();
+    }
+}
@@ -0,0 +1,379 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Page-at-a-time listing of dogs or monkeys, from an in-memory list or straight from a
+// memory-mapped animals.txt snapshot. Each page returns a continuation token for the
+// next one, so callers never hold more than a page of animals.
+//
+// LIST order walks the source from the token's position, so a page costs time in
+// proportion to its size; a file is only indexed as far as the page reaches. NAME
+// (case-insensitive) and ACQUISITION_DATE orders use a sort index of record positions:
+// a page is a binary search plus its own records, but building the index reads the
+// sort key of every animal and sorts them, O(n log n), and for a file parses that
+// column of every record. Ties keep source order, so the sort is stable and every
+// animal appears exactly once.
+//
+// A file snapshot never changes, so its index is built once. A registry pager listens
+// for additions, renames, acquisition date changes and replacement, and rebuilds the
+// index on the next sorted page after any of them: under steady intake or edits every
+// sorted page can pay the full rebuild. A pager over a plain list only notices growth,
+// so the list must not be edited while it is paged.
+//
+// Tokens hold the sort key and position of the last animal returned rather than an
+// offset, so paging stays correct when animals are added between pages. Only the
+// animals on a page are materialized; for a file that means only their lines are parsed.
+public class AnimalPager<T extends RescueAnimal> implements AutoCloseable {
+
+    public enum Order { LIST, NAME, ACQUISITION_DATE }
+
+    // Column of the acquisition date in animals.txt records
+    private static final int DOG_DATE_COLUMN = 6;
+    private static final int MONKEY_DATE_COLUMN = 9;
+
+    // Sort key for dates that are missing or not MM-DD-YYYY; they list last
+    private static final int UNKNOWN_DATE = Integer.MAX_VALUE;
+
+    // One page of animals and the token for the next page, or null after the last page
+    public static class Page<T> {
+        private final List<T> animals;
+        private final String nextToken;
+
+        Page(List<T> animals, String nextToken) {
+            this.animals = animals;
+            this.nextToken = nextToken;
+        }
+
+        public List<T> getAnimals() { return animals; }
+        public String getNextToken() { return nextToken; }
+        public boolean hasMore() { return nextToken != null; }
+    }
+
+    // Positions in a list or records in a file; not every record need belong to the pager
+    private interface Source<T> {
+        int size();
+
+        // True if the position exists; unlike size() need not look past it
+        boolean has(int position);
+
+        boolean includes(int position);
+
+        String name(int position);
+
+        String acquisitionDate(int position);
+
+        T get(int position);
+    }
+
+    // Sorted positions for one order, and the source size and change count it was built for
+    private static class SortIndex {
+        final int[] positions;
+        final int size;
+        final long changes;
+
+        SortIndex(int[] positions, int size, long changes) {
+            this.positions = positions;
+            this.size = size;
+            this.changes = changes;
+        }
+    }
+
+    private final Source<T> source;
+    private final Map<Order, SortIndex> indexes = new EnumMap<>(Order.class);
+
+    // Bumped by registry events that can reorder the source; no lock, because the
+    // registry delivers additions while holding its own lock
+    private final AtomicLong changes = new AtomicLong();
+    private final AnimalRegistry registry;
+    private final RegistryListener listener;
+
+    private AnimalPager(Source<T> source) {
+        this.source = source;
+        this.registry = null;
+        this.listener = null;
+    }
+
+    // Pages over the animals of the given class in a registry list, counting the
+    // registry events that can reorder them
+    private AnimalPager(AnimalRegistry registry, List<T> animals, Class<T> type) {
+        this.source = listSource(animals);
+        this.registry = registry;
+        this.listener = new RegistryListener() {
+            @Override
+            public void animalAdded(RescueAnimal animal) {
+                if (type.isInstance(animal)) {
+                    changes.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void animalsAdded(List<? extends RescueAnimal> animals) {
+                changes.incrementAndGet();
+            }
+
+            @Override
+            public void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+                if (type.isInstance(animal) && (field.equals("name") || field.equals("acquisitionDate"))) {
+                    changes.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void registryReplaced() {
+                changes.incrementAndGet();
+            }
+        };
+        registry.addRegistryListener(listener);
+    }
+
+    // Pages over a list the caller does not edit while paging; the list is read, never copied
+    public static <T extends RescueAnimal> AnimalPager<T> of(List<T> animals) {
+        return new AnimalPager<>(listSource(animals));
+    }
+
+    // Pages over the registry's dogs, following its changes until closed
+    public static AnimalPager<Dog> dogs(AnimalRegistry registry) {
+        return new AnimalPager<>(registry, registry.getDogs(), Dog.class);
+    }
+
+    // Pages over the registry's monkeys, following its changes until closed
+    public static AnimalPager<Monkey> monkeys(AnimalRegistry registry) {
+        return new AnimalPager<>(registry, registry.getMonkeys(), Monkey.class);
+    }
+
+    private static <T extends RescueAnimal> Source<T> listSource(List<T> animals) {
+        return new Source<T>() {
+            @Override public int size() { return animals.size(); }
+            @Override public boolean has(int position) { return position >= 0 && position < animals.size(); }
+            @Override public boolean includes(int position) { return true; }
+            @Override public String name(int position) { return animals.get(position).getName(); }
+            @Override public String acquisitionDate(int position) { return animals.get(position).getAcquisitionDate(); }
+            @Override public T get(int position) { return animals.get(position); }
+        };
+    }
+
+    // Pages over the dog records of a mapped snapshot
+    public static AnimalPager<Dog> dogs(MappedAnimalFile file) {
+        return new AnimalPager<>(new Source<Dog>() {
+            @Override public int size() { return file.size(); }
+            @Override public boolean has(int record) { return file.hasRecord(record); }
+            @Override public boolean includes(int record) { return file.isDog(record); }
+            @Override public String name(int record) { return file.name(record); }
+            @Override public String acquisitionDate(int record) { return file.field(record, DOG_DATE_COLUMN); }
+            @Override public Dog get(int record) { return (Dog) file.materialize(record); }
+        });
+    }
+
+    // Pages over the monkey records of a mapped snapshot
+    public static AnimalPager<Monkey> monkeys(MappedAnimalFile file) {
+        return new AnimalPager<>(new Source<Monkey>() {
+            @Override public int size() { return file.size(); }
+            @Override public boolean has(int record) { return file.hasRecord(record); }
+            @Override public boolean includes(int record) { return file.isMonkey(record); }
+            @Override public String name(int record) { return file.name(record); }
+            @Override public String acquisitionDate(int record) { return file.field(record, MONKEY_DATE_COLUMN); }
+            @Override public Monkey get(int record) { return (Monkey) file.materialize(record); }
+        });
+    }
+
+    // Returns up to pageSize animals after the token (null for the first page)
+    public synchronized Page<T> page(Order order, int pageSize, String token) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        Token after = token == null ? null : Token.parse(token, order);
+        return order == Order.LIST ? listPage(pageSize, after) : sortedPage(order, pageSize, after);
+    }
+
+    // Stops testing positions at the first one past the page that belongs to the pager
+    private Page<T> listPage(int pageSize, Token after) {
+        List<T> animals = new ArrayList<>(Math.min(pageSize, 64));
+        int position = after == null ? 0 : after.position + 1;
+        int last = -1;
+        for (; animals.size() < pageSize && source.has(position); position++) {
+            if (source.includes(position)) {
+                animals.add(source.get(position));
+                last = position;
+            }
+        }
+        while (source.has(position) && !source.includes(position)) {
+            position++;
+        }
+        return new Page<>(animals, source.has(position) ? Token.encode(Order.LIST, last, "") : null);
+    }
+
+    private Page<T> sortedPage(Order order, int pageSize, Token after) {
+        int[] index = index(order);
+        int slot = after == null ? 0 : firstAfter(index, order, after);
+        int end = (int) Math.min(index.length, (long) slot + pageSize);
+        List<T> animals = new ArrayList<>(end - slot);
+        for (int i = slot; i < end; i++) {
+            animals.add(source.get(index[i]));
+        }
+        String next = null;
+        if (end < index.length && end > slot) {
+            int last = index[end - 1];
+            next = Token.encode(order, last, keyOf(order, last));
+        }
+        return new Page<>(animals, next);
+    }
+
+    // Sorted positions for the order, rebuilt if the source grew or a registry event
+    // arrived since the last build. The change count is read before building, so an
+    // event during the build leaves the new index stale rather than lost.
+    private int[] index(Order order) {
+        long seen = changes.get();
+        int size = source.size();
+        SortIndex index = indexes.get(order);
+        if (index != null && index.size == size && index.changes == seen) {
+            return index.positions;
+        }
+        int[] positions = order == Order.NAME ? sortByName(size) : sortByDate(size);
+        indexes.put(order, new SortIndex(positions, size, seen));
+        return positions;
+    }
+
+    // Stops following the registry; a no-op for list and file pagers
+    @Override
+    public void close() {
+        if (registry != null) {
+            registry.removeRegistryListener(listener);
+        }
+    }
+
+    private int[] sortByName(int size) {
+        List<Integer> positions = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int position = 0; position < size; position++) {
+            if (source.includes(position)) {
+                positions.add(position);
+                keys.add(AnimalRegistry.key(source.name(position)));
+            }
+        }
+        Integer[] order = new Integer[positions.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Arrays.sort on objects is stable, so equal names keep source order
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+        int[] index = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            index[i] = positions.get(order[i]);
+        }
+        return index;
+    }
+
+    private int[] sortByDate(int size) {
+        // Date key in the high half and position in the low half: one primitive sort
+        // orders by date, then by source position
+        long[] packed = new long[size];
+        int count = 0;
+        for (int position = 0; position < size; position++) {
+            if (source.includes(position)) {
+                packed[count++] = ((long) dateKey(source.acquisitionDate(position)) << 32) | position;
+            }
+        }
+        Arrays.sort(packed, 0, count);
+        int[] index = new int[count];
+        for (int i = 0; i < count; i++) {
+            index[i] = (int) packed[i];
+        }
+        return index;
+    }
+
+    // First slot whose (key, position) sorts after the token's
+    private int firstAfter(int[] index, Order order, Token after) {
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(order, index[mid], after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(Order order, int position, Token token) {
+        int byKey = order == Order.NAME
+                ? AnimalRegistry.key(source.name(position)).compareTo(token.key)
+                : Integer.compare(dateKey(source.acquisitionDate(position)), Integer.parseInt(token.key));
+        return byKey != 0 ? byKey : Integer.compare(position, token.position);
+    }
+
+    private String keyOf(Order order, int position) {
+        return order == Order.NAME
+                ? AnimalRegistry.key(source.name(position))
+                : Integer.toString(dateKey(source.acquisitionDate(position)));
+    }
+
+    // YYYYMMDD for an MM-DD-YYYY date, so dates sort chronologically
+    static int dateKey(String date) {
+        if (date == null) {
+            return UNKNOWN_DATE;
+        }
+        String[] parts = date.trim().split("-");
+        if (parts.length != 3) {
+            return UNKNOWN_DATE;
+        }
+        try {
+            int month = Integer.parseInt(parts[0]);
+            int day = Integer.parseInt(parts[1]);
+            int year = Integer.parseInt(parts[2]);
+            if (month < 1 || month > 12 || day < 1 || day > 31 || year < 0 || year > 9999) {
+                return UNKNOWN_DATE;
+            }
+            return year * 10_000 + month * 100 + day;
+        } catch (NumberFormatException e) {
+            return UNKNOWN_DATE;
+        }
+    }
+
+    // Continuation token: order, position and sort key of the last animal returned,
+    // as URL-safe Base64 so it can be passed around as an opaque string
+    private static class Token {
+        final int position;
+        final String key;
+
+        Token(int position, String key) {
+            this.position = position;
+            this.key = key;
+        }
+
+        static String encode(Order order, int position, String key) {
+            String text = order.name() + '\n' + position + '\n' + key;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Token parse(String token, Order order) {
+            String[] parts;
+            try {
+                parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\n", 3);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+            if (!parts[0].equals(order.name())) {
+                throw new IllegalArgumentException("Continuation token is for " + parts[0] + " order, not " + order);
+            }
+            try {
+                int position = Integer.parseInt(parts[1]);
+                if (order == Order.ACQUISITION_DATE) {
+                    Integer.parseInt(parts[2]);
+                }
+                return new Token(position, parts[2]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+        }
+    }
+}
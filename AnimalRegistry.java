@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Owns the dog and monkey collections and keeps case-insensitive secondary indexes
+// (name, type, acquisition country, in-service country) so lookups no longer scan
+// every animal. Indexes are kept current through the RescueAnimal setters.
+public class AnimalRegistry implements AnimalListener {
+
+    private final List<Dog> dogs = new ArrayList<>();
+    private final List<Monkey> monkeys = new ArrayList<>();
+
+    // Secondary indexes: lower-cased key -> animals in insertion order
+    private final Map<String, Set<RescueAnimal>> byName = new HashMap<>();
+    private final Map<String, Set<RescueAnimal>> byType = new HashMap<>();
+    private final Map<String, Set<RescueAnimal>> byAcquisitionCountry = new HashMap<>();
+    private final Map<String, Set<RescueAnimal>> byInServiceCountry = new HashMap<>();
+
+    // Ready-queues of unreserved animals per type and in-service country
+    private final ReservationEngine reservations = new ReservationEngine();
+
+    // Components notified of additions, field changes and full replacements
+    private final List<RegistryListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Normalizes a value into an index key
+    public static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Type key for an animal; Dog and Monkey do not set a type so fall back to the class name
+    public static String typeKey(RescueAnimal animal) {
+        String type = animal.getType();
+        return key(type != null ? type : animal.getClass().getSimpleName());
+    }
+
+    public void addRegistryListener(RegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeRegistryListener(RegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Adds a dog and indexes it
+    public synchronized void addDog(Dog dog) {
+        dogs.add(dog);
+        index(dog);
+        reservations.track(dog);
+        fireAdded(dog);
+    }
+
+    // Adds a monkey and indexes it
+    public synchronized void addMonkey(Monkey monkey) {
+        monkeys.add(monkey);
+        index(monkey);
+        reservations.track(monkey);
+        fireAdded(monkey);
+    }
+
+    // Adds a dog or monkey to the matching collection
+    public synchronized void add(RescueAnimal animal) {
+        if (animal instanceof Dog) {
+            addDog((Dog) animal);
+        } else if (animal instanceof Monkey) {
+            addMonkey((Monkey) animal);
+        } else {
+            throw new IllegalArgumentException("Unsupported animal: " + animal.getClass().getSimpleName());
+        }
+    }
+
+    // Adds a dog or monkey unless one of the same type and name is already registered;
+    // returns false for a duplicate
+    public synchronized boolean addIfAbsent(RescueAnimal animal) {
+        if (findByNameAndType(animal.getName(), typeKey(animal)) != null) {
+            return false;
+        }
+        add(animal);
+        return true;
+    }
+
+    // Adds every dog and monkey that is not a duplicate, under one lock. A duplicate has
+    // the same type and name as a registered animal or an earlier animal in the batch;
+    // since those are indexed as they are added, each check is one name-index lookup.
+    // Returns the duplicates, which are not added.
+    //
+    // The reservation engine and the listeners are only told once the whole batch is
+    // in, through ReservationEngine.trackAll and RegistryListener.animalsAdded. Readers
+    // that take the registry's lock see none or all of the batch; so do readers of the
+    // availability view and search engine, which take the batch under their own lock,
+    // and a reserve, for the animals of the one type and country it asks for.
+    public synchronized List<RescueAnimal> addAllAbsent(List<? extends RescueAnimal> animals) {
+        List<RescueAnimal> duplicates = new ArrayList<>();
+        List<RescueAnimal> added = new ArrayList<>(animals.size());
+        for (RescueAnimal animal : animals) {
+            if (findByNameAndType(animal.getName(), typeKey(animal)) != null) {
+                duplicates.add(animal);
+            } else if (animal instanceof Dog) {
+                dogs.add((Dog) animal);
+                index(animal);
+                added.add(animal);
+            } else if (animal instanceof Monkey) {
+                monkeys.add((Monkey) animal);
+                index(animal);
+                added.add(animal);
+            } else {
+                throw new IllegalArgumentException("Unsupported animal: " + animal.getClass().getSimpleName());
+            }
+        }
+        reservations.trackAll(added);
+        for (RegistryListener listener : listeners) {
+            listener.animalsAdded(added);
+        }
+        return duplicates;
+    }
+
+    // Replaces every animal with the given ones. Listeners get a single
+    // registryReplaced event instead of one animalAdded per animal.
+    public synchronized void replaceAll(List<Dog> newDogs, List<Monkey> newMonkeys) {
+        removeAll();
+        for (Dog dog : newDogs) {
+            dogs.add(dog);
+            index(dog);
+        }
+        for (Monkey monkey : newMonkeys) {
+            monkeys.add(monkey);
+            index(monkey);
+        }
+        reservations.trackAll(newDogs);
+        reservations.trackAll(newMonkeys);
+        fireReplaced();
+    }
+
+    // Removes every animal and index entry
+    public synchronized void clear() {
+        removeAll();
+        fireReplaced();
+    }
+
+    private void removeAll() {
+        for (Dog dog : dogs) {
+            dog.removeListener(this);
+            dog.removeListener(reservations);
+        }
+        for (Monkey monkey : monkeys) {
+            monkey.removeListener(this);
+            monkey.removeListener(reservations);
+        }
+        reservations.clear();
+        dogs.clear();
+        monkeys.clear();
+        byName.clear();
+        byType.clear();
+        byAcquisitionCountry.clear();
+        byInServiceCountry.clear();
+    }
+
+    // Read-only views of the collections
+    public synchronized List<Dog> getDogs() { return Collections.unmodifiableList(dogs); }
+    public synchronized List<Monkey> getMonkeys() { return Collections.unmodifiableList(monkeys); }
+
+    // Copies of the collections, safe to iterate while other threads add animals
+    public synchronized List<Dog> copyDogs() { return new ArrayList<>(dogs); }
+    public synchronized List<Monkey> copyMonkeys() { return new ArrayList<>(monkeys); }
+
+    // Copies of up to max animals of a collection starting at a position, for reading a
+    // long collection a block at a time
+    public synchronized List<Dog> copyDogs(int from, int max) {
+        return new ArrayList<>(dogs.subList(Math.min(from, dogs.size()), Math.min(dogs.size(), from + max)));
+    }
+
+    public synchronized List<Monkey> copyMonkeys(int from, int max) {
+        return new ArrayList<>(monkeys.subList(Math.min(from, monkeys.size()), Math.min(monkeys.size(), from + max)));
+    }
+
+    public synchronized int size() { return dogs.size() + monkeys.size(); }
+
+    // Finds a dog by name (case-insensitive), or null
+    public synchronized Dog findDog(String name) {
+        return (Dog) findByNameAndType(name, "dog");
+    }
+
+    // Finds a monkey by name (case-insensitive), or null
+    public synchronized Monkey findMonkey(String name) {
+        return (Monkey) findByNameAndType(name, "monkey");
+    }
+
+    // Finds an animal of the given type by name, or null
+    public synchronized RescueAnimal findByNameAndType(String name, String type) {
+        String typeKey = key(type);
+        for (RescueAnimal animal : lookup(byName, name)) {
+            if (typeKey(animal).equals(typeKey)) {
+                return animal;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<RescueAnimal> findByName(String name) {
+        return new ArrayList<>(lookup(byName, name));
+    }
+
+    public synchronized List<RescueAnimal> findByType(String type) {
+        return new ArrayList<>(lookup(byType, type));
+    }
+
+    public synchronized List<RescueAnimal> findByAcquisitionCountry(String country) {
+        return new ArrayList<>(lookup(byAcquisitionCountry, country));
+    }
+
+    public synchronized List<RescueAnimal> findByInServiceCountry(String country) {
+        return new ArrayList<>(lookup(byInServiceCountry, country));
+    }
+
+    // Reserves the next unreserved animal of the given type serving in the given country,
+    // or returns null. Runs against the ready-queues without taking the registry lock.
+    public RescueAnimal reserve(String type, String inServiceCountry) {
+        return reservations.reserve(type, inServiceCountry);
+    }
+
+    // Keeps the indexes current when an indexed field changes through a setter
+    @Override
+    public void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        switch (field) {
+            case "name":
+            case "type":
+            case "acquisitionCountry":
+            case "inServiceCountry":
+                reindex(animal, field, oldValue, newValue);
+                break;
+            default:
+                // Reservation and other field changes do not touch the indexes
+                break;
+        }
+        for (RegistryListener listener : listeners) {
+            listener.animalChanged(animal, field, oldValue, newValue);
+        }
+    }
+
+    private void fireAdded(RescueAnimal animal) {
+        for (RegistryListener listener : listeners) {
+            listener.animalAdded(animal);
+        }
+    }
+
+    private void fireReplaced() {
+        for (RegistryListener listener : listeners) {
+            listener.registryReplaced();
+        }
+    }
+
+    private synchronized void reindex(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        switch (field) {
+            case "name":
+                move(byName, (String) oldValue, (String) newValue, animal);
+                break;
+            case "type":
+                move(byType, key(oldValue != null ? (String) oldValue : animal.getClass().getSimpleName()),
+                        typeKey(animal), animal);
+                break;
+            case "acquisitionCountry":
+                move(byAcquisitionCountry, (String) oldValue, (String) newValue, animal);
+                break;
+            case "inServiceCountry":
+                move(byInServiceCountry, (String) oldValue, (String) newValue, animal);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void index(RescueAnimal animal) {
+        put(byName, animal.getName(), animal);
+        put(byType, typeKey(animal), animal);
+        put(byAcquisitionCountry, animal.getAcquisitionCountry(), animal);
+        put(byInServiceCountry, animal.getInServiceCountry(), animal);
+        animal.addListener(this);
+    }
+
+    private static Set<RescueAnimal> lookup(Map<String, Set<RescueAnimal>> index, String value) {
+        Set<RescueAnimal> animals = index.get(key(value));
+        return animals != null ? animals : Collections.emptySet();
+    }
+
+    private static void put(Map<String, Set<RescueAnimal>> index, String value, RescueAnimal animal) {
+        index.computeIfAbsent(key(value), k -> new LinkedHashSet<>()).add(animal);
+    }
+
+    private static void move(Map<String, Set<RescueAnimal>> index, String oldValue, String newValue, RescueAnimal animal) {
+        Set<RescueAnimal> animals = index.get(key(oldValue));
+        if (animals != null) {
+            animals.remove(animal);
+            if (animals.isEmpty()) {
+                index.remove(key(oldValue));
+            }
+        }
+        put(index, newValue, animal);
+    }
+}
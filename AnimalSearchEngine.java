@@ -0,0 +1,511 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Search subsystem for the animal registry. Names are indexed twice: a sorted map of
+// lower-cased names answers exact and prefix lookups in name order, and a trigram index
+// over the distinct names finds typo-tolerant (fuzzy) matches. Inverted indexes over
+// type, gender, training status and both countries answer combined field filters.
+//
+// Results are ranked (exact name, then prefix or closest edit distance, then name) and
+// returned one page at a time; a page stops collecting as soon as it is full, so a
+// prefix or filter query does not have to visit every match.
+public class AnimalSearchEngine implements RegistryListener {
+
+    // Fields that have an inverted index, as used in Query.where
+    public static final String TYPE = "type";
+    public static final String GENDER = "gender";
+    public static final String TRAINING_STATUS = "trainingStatus";
+    public static final String ACQUISITION_COUNTRY = "acquisitionCountry";
+    public static final String IN_SERVICE_COUNTRY = "inServiceCountry";
+
+    private static final String[] INDEXED_FIELDS = {
+        TYPE, GENDER, TRAINING_STATUS, ACQUISITION_COUNTRY, IN_SERVICE_COUNTRY
+    };
+
+    public enum NameMatch { EXACT, PREFIX, FUZZY }
+
+    // A search request; unset parts do not restrict the results
+    public static class Query {
+        private String name;
+        private NameMatch nameMatch = NameMatch.EXACT;
+        private final Map<String, String> fields = new HashMap<>();
+        private boolean unreservedOnly;
+        private int offset;
+        private int limit = 25;
+
+        public Query name(String name, NameMatch match) {
+            this.name = name;
+            this.nameMatch = match;
+            return this;
+        }
+
+        // Restricts an indexed field (TYPE, GENDER, ...) to a value, ignoring case
+        public Query where(String field, String value) {
+            fields.put(field, value);
+            return this;
+        }
+
+        public Query unreservedOnly(boolean unreservedOnly) {
+            this.unreservedOnly = unreservedOnly;
+            return this;
+        }
+
+        public Query page(int offset, int limit) {
+            this.offset = Math.max(0, offset);
+            this.limit = Math.max(1, limit);
+            return this;
+        }
+
+        public String getName() { return name; }
+        public NameMatch getNameMatch() { return nameMatch; }
+        public Map<String, String> getFields() { return Collections.unmodifiableMap(fields); }
+        public boolean isUnreservedOnly() { return unreservedOnly; }
+        public int getOffset() { return offset; }
+        public int getLimit() { return limit; }
+    }
+
+    // One ranked match; lower scores rank first
+    public static class Hit {
+        private final RescueAnimal animal;
+        private final int score;
+
+        Hit(RescueAnimal animal, int score) {
+            this.animal = animal;
+            this.score = score;
+        }
+
+        public RescueAnimal getAnimal() { return animal; }
+
+        // 0 for an exact name match; otherwise the edit distance (fuzzy) or the
+        // number of characters past the prefix (prefix)
+        public int getScore() { return score; }
+    }
+
+    // One page of results
+    public static class Page {
+        private final List<Hit> hits;
+        private final int offset;
+        private final boolean hasMore;
+
+        Page(List<Hit> hits, int offset, boolean hasMore) {
+            this.hits = hits;
+            this.offset = offset;
+            this.hasMore = hasMore;
+        }
+
+        public List<Hit> getHits() { return hits; }
+        public int getOffset() { return offset; }
+        public boolean hasMore() { return hasMore; }
+
+        // Offset of the following page
+        public int nextOffset() { return offset + hits.size(); }
+    }
+
+    // Lower-cased name -> animals with that name, in name order
+    private final TreeMap<String, Set<RescueAnimal>> names = new TreeMap<>();
+
+    // Distinct lower-cased names by id. Ids are never reused or removed: a name that no
+    // longer has any animals simply produces no hits.
+    private final List<String> nameById = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    // Trigram -> ids of the names containing it
+    private final Map<String, IdList> trigrams = new HashMap<>();
+
+    // Name length -> ids of the names of that length, for queries too short to filter
+    // by trigrams
+    private final List<IdList> idsByLength = new ArrayList<>();
+
+    // Per-name shared-trigram counters reused by fuzzy queries (reset after each query)
+    private int[] sharedCounts = new int[0];
+
+    // Field -> lower-cased value -> animals
+    private final Map<String, Map<String, Set<RescueAnimal>>> fieldIndexes = new HashMap<>();
+
+    private final AnimalRegistry registry;
+
+    public AnimalSearchEngine(AnimalRegistry registry) {
+        this.registry = registry;
+        for (String field : INDEXED_FIELDS) {
+            fieldIndexes.put(field, new HashMap<>());
+        }
+        registry.addRegistryListener(this);
+        rebuild();
+    }
+
+    // Runs a query and returns the requested page
+    public synchronized Page search(Query query) {
+        List<Set<RescueAnimal>> filters = new ArrayList<>();
+        for (Map.Entry<String, String> entry : query.fields.entrySet()) {
+            Map<String, Set<RescueAnimal>> index = fieldIndexes.get(entry.getKey());
+            if (index == null) {
+                throw new IllegalArgumentException("Field '" + entry.getKey() + "' is not indexed");
+            }
+            Set<RescueAnimal> matches = index.get(AnimalRegistry.key(entry.getValue()));
+            if (matches == null) {
+                return new Page(Collections.emptyList(), query.offset, false);
+            }
+            filters.add(matches);
+        }
+        // Check the most selective filter first
+        filters.sort(Comparator.comparingInt(Set::size));
+
+        Collector collector = new Collector(query, filters);
+        if (query.name == null) {
+            collectFiltered(filters, collector);
+        } else if (query.nameMatch == NameMatch.FUZZY) {
+            collectFuzzy(AnimalRegistry.key(query.name), collector);
+        } else {
+            collectByName(AnimalRegistry.key(query.name), query.nameMatch == NameMatch.PREFIX, collector);
+        }
+        return collector.toPage();
+    }
+
+    // Rebuilds every index from the registry. The registry's lock is taken before the
+    // engine's, the same order as its add and replace events, so the two cannot deadlock
+    // and no animal added during the rebuild is missed.
+    public void rebuild() {
+        synchronized (registry) {
+            synchronized (this) {
+                names.clear();
+                nameById.clear();
+                nameIds.clear();
+                trigrams.clear();
+                idsByLength.clear();
+                for (Map<String, Set<RescueAnimal>> index : fieldIndexes.values()) {
+                    index.clear();
+                }
+                for (Dog dog : registry.getDogs()) {
+                    add(dog);
+                }
+                for (Monkey monkey : registry.getMonkeys()) {
+                    add(monkey);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void animalAdded(RescueAnimal animal) {
+        add(animal);
+    }
+
+    // Called with the registry's lock held
+    @Override
+    public synchronized void animalsAdded(List<? extends RescueAnimal> animals) {
+        for (RescueAnimal animal : animals) {
+            add(animal);
+        }
+    }
+
+    // Called with the registry's lock held
+    @Override
+    public void registryReplaced() {
+        rebuild();
+    }
+
+    // Reservation changes are ignored before taking the lock so reserves stay lock-free here
+    @Override
+    public void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        if (field.equals("name") || field.equals(TYPE) || fieldIndexes.containsKey(field)) {
+            reindex(animal, field, oldValue, newValue);
+        }
+    }
+
+    private synchronized void reindex(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        switch (field) {
+            case "name":
+                removeName((String) oldValue, animal);
+                addName(animal.getName(), animal);
+                break;
+            case "type":
+                String oldType = oldValue != null ? (String) oldValue : animal.getClass().getSimpleName();
+                move(TYPE, oldType, AnimalRegistry.typeKey(animal), animal);
+                break;
+            case GENDER:
+            case TRAINING_STATUS:
+            case ACQUISITION_COUNTRY:
+            case IN_SERVICE_COUNTRY:
+                move(field, (String) oldValue, (String) newValue, animal);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Exact or prefix matches walked in name order; an exact name sorts before its extensions
+    private void collectByName(String name, boolean prefix, Collector collector) {
+        if (!prefix) {
+            collector.addAll(names.get(name), 0);
+            return;
+        }
+        SortedMap<String, Set<RescueAnimal>> range = names.subMap(name, name + Character.MAX_VALUE);
+        for (Map.Entry<String, Set<RescueAnimal>> entry : range.entrySet()) {
+            if (!collector.addAll(entry.getValue(), entry.getKey().length() - name.length())) {
+                return;
+            }
+        }
+    }
+
+    // Names within the allowed edit distance, found through shared trigrams. An edit
+    // changes at most 3 trigrams and a transposition at most 4, so a name within distance
+    // k of the query shares at least |grams| - 4k of them. When that bound is not above
+    // zero (names of up to three letters, or four with a repeated letter) a match may share
+    // none, so every name whose length is within k of the query's is compared instead.
+    private void collectFuzzy(String name, Collector collector) {
+        int maxDistance = name.length() <= 7 ? 1 : 2;
+        Set<String> grams = trigramsOf(name);
+        int minShared = grams.size() - 4 * maxDistance;
+
+        TreeMap<Integer, List<String>> byDistance = new TreeMap<>();
+        if (minShared < 1) {
+            int longest = Math.min(idsByLength.size() - 1, name.length() + maxDistance);
+            for (int length = Math.max(0, name.length() - maxDistance); length <= longest; length++) {
+                IdList ids = idsByLength.get(length);
+                for (int i = 0; i < ids.size; i++) {
+                    addIfNear(byDistance, name, nameById.get(ids.ids[i]), maxDistance);
+                }
+            }
+        } else {
+            if (sharedCounts.length < nameById.size()) {
+                sharedCounts = new int[Math.max(nameById.size(), sharedCounts.length * 2)];
+            }
+            IdList touched = new IdList();
+            for (String gram : grams) {
+                IdList postings = trigrams.get(gram);
+                if (postings != null) {
+                    for (int i = 0; i < postings.size; i++) {
+                        int id = postings.ids[i];
+                        if (sharedCounts[id]++ == 0) {
+                            touched.add(id);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < touched.size; i++) {
+                int id = touched.ids[i];
+                if (sharedCounts[id] >= minShared) {
+                    addIfNear(byDistance, name, nameById.get(id), maxDistance);
+                }
+                sharedCounts[id] = 0;
+            }
+        }
+
+        for (Map.Entry<Integer, List<String>> entry : byDistance.entrySet()) {
+            List<String> matches = entry.getValue();
+            Collections.sort(matches);
+            for (String match : matches) {
+                if (!collector.addAll(names.get(match), entry.getKey())) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Animals matching every field filter, in insertion order of the smallest filter.
+    // With no filter every animal matches: dogs, then monkeys, then any other type, read
+    // from the engine's own type index so a search never calls back into the registry.
+    private void collectFiltered(List<Set<RescueAnimal>> filters, Collector collector) {
+        if (filters.isEmpty()) {
+            Map<String, Set<RescueAnimal>> types = fieldIndexes.get(TYPE);
+            if (!collector.addAll(types.get("dog"), 0) || !collector.addAll(types.get("monkey"), 0)) {
+                return;
+            }
+            for (Map.Entry<String, Set<RescueAnimal>> entry : types.entrySet()) {
+                if (!entry.getKey().equals("dog") && !entry.getKey().equals("monkey")
+                        && !collector.addAll(entry.getValue(), 0)) {
+                    return;
+                }
+            }
+            return;
+        }
+        collector.addAll(filters.get(0), 0);
+    }
+
+    // Applies the remaining filters and the page window while matches are collected
+    private static class Collector {
+        private final Query query;
+        private final List<Set<RescueAnimal>> filters;
+        private final List<Hit> hits = new ArrayList<>();
+        private int skipped;
+        private boolean hasMore;
+
+        Collector(Query query, List<Set<RescueAnimal>> filters) {
+            this.query = query;
+            this.filters = filters;
+        }
+
+        // Returns false once the page is full
+        boolean addAll(Set<RescueAnimal> animals, int score) {
+            if (animals != null) {
+                for (RescueAnimal animal : animals) {
+                    if (!add(animal, score)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        boolean add(RescueAnimal animal, int score) {
+            if (query.unreservedOnly && animal.getReserved()) {
+                return true;
+            }
+            for (Set<RescueAnimal> filter : filters) {
+                if (!filter.contains(animal)) {
+                    return true;
+                }
+            }
+            if (skipped < query.offset) {
+                skipped++;
+                return true;
+            }
+            if (hits.size() == query.limit) {
+                hasMore = true;
+                return false;
+            }
+            hits.add(new Hit(animal, score));
+            return true;
+        }
+
+        Page toPage() {
+            return new Page(hits, query.offset, hasMore);
+        }
+    }
+
+    private void add(RescueAnimal animal) {
+        addName(animal.getName(), animal);
+        put(TYPE, AnimalRegistry.typeKey(animal), animal);
+        put(GENDER, animal.getGender(), animal);
+        put(TRAINING_STATUS, animal.getTrainingStatus(), animal);
+        put(ACQUISITION_COUNTRY, animal.getAcquisitionCountry(), animal);
+        put(IN_SERVICE_COUNTRY, animal.getInServiceCountry(), animal);
+    }
+
+    private void addName(String name, RescueAnimal animal) {
+        String key = AnimalRegistry.key(name);
+        Set<RescueAnimal> animals = names.get(key);
+        if (animals == null) {
+            animals = new LinkedHashSet<>();
+            names.put(key, animals);
+            if (!nameIds.containsKey(key)) {
+                int id = nameById.size();
+                nameById.add(key);
+                nameIds.put(key, id);
+                for (String gram : trigramsOf(key)) {
+                    trigrams.computeIfAbsent(gram, g -> new IdList()).add(id);
+                }
+                while (idsByLength.size() <= key.length()) {
+                    idsByLength.add(new IdList());
+                }
+                idsByLength.get(key.length()).add(id);
+            }
+        }
+        animals.add(animal);
+    }
+
+    private void removeName(String name, RescueAnimal animal) {
+        String key = AnimalRegistry.key(name);
+        Set<RescueAnimal> animals = names.get(key);
+        if (animals == null) {
+            return;
+        }
+        animals.remove(animal);
+        if (animals.isEmpty()) {
+            names.remove(key);
+        }
+    }
+
+    private void put(String field, String value, RescueAnimal animal) {
+        fieldIndexes.get(field).computeIfAbsent(AnimalRegistry.key(value), k -> new LinkedHashSet<>()).add(animal);
+    }
+
+    private void move(String field, String oldValue, String newValue, RescueAnimal animal) {
+        Map<String, Set<RescueAnimal>> index = fieldIndexes.get(field);
+        String oldKey = AnimalRegistry.key(oldValue);
+        Set<RescueAnimal> animals = index.get(oldKey);
+        if (animals != null) {
+            animals.remove(animal);
+            if (animals.isEmpty()) {
+                index.remove(oldKey);
+            }
+        }
+        put(field, newValue, animal);
+    }
+
+    // Growable list of name ids
+    private static class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private static void addIfNear(TreeMap<Integer, List<String>> byDistance, String name, String candidate,
+                                  int maxDistance) {
+        int distance = editDistance(name, candidate, maxDistance);
+        if (distance <= maxDistance) {
+            byDistance.computeIfAbsent(distance, d -> new ArrayList<>()).add(candidate);
+        }
+    }
+
+    // Trigrams of a name padded with two leading spaces and one trailing space
+    static Set<String> trigramsOf(String name) {
+        String padded = "  " + name + " ";
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    // Edit distance counting insertions, deletions, substitutions and transpositions of
+    // adjacent letters as one edit each, giving up early (returning max + 1) once it
+    // exceeds max
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Materialized availability for dashboards and option 6. An animal is available when it
+// is not reserved and its training status is "in service". The view keeps, per animal
+// type, the set of available animals overall and per in-service country, plus reserved
+// counts per country.
+//
+// It follows the registry as a RegistryListener. A change to reserved, trainingStatus,
+// inServiceCountry or type moves only that animal between sets, so counts are O(1)
+// and listings are O(results) rather than a scan over every animal. Sets are ordered
+// by registration, so listings come out in registry order.
+public class AvailabilityView implements RegistryListener {
+
+    // Type codes for the per-type methods
+    public static final byte DOG = 0;
+    public static final byte MONKEY = 1;
+    public static final byte OTHER = 2;
+
+    private static final int TYPES = 3;
+
+    private final AnimalRegistry registry;
+
+    // Where each animal is currently counted
+    private final Map<RescueAnimal, Membership> members = new IdentityHashMap<>();
+    private long nextSequence;
+
+    // Per type: available animals by registration sequence, overall and per country key
+    private final List<TreeMap<Long, RescueAnimal>> available = new ArrayList<>(TYPES);
+    private final List<Map<String, TreeMap<Long, RescueAnimal>>> availableByCountry = new ArrayList<>(TYPES);
+
+    // Per type: number of reserved animals per country key
+    private final List<Map<String, int[]>> reservedByCountry = new ArrayList<>(TYPES);
+
+    // Display spelling of each country key (the first one seen)
+    private final Map<String, String> countryNames = new HashMap<>();
+
+    private static class Membership {
+        final long sequence;
+        byte type;
+        String country; // key
+        boolean available;
+        boolean reserved;
+
+        Membership(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    public AvailabilityView(AnimalRegistry registry) {
+        this.registry = registry;
+        for (int type = 0; type < TYPES; type++) {
+            available.add(new TreeMap<>());
+            availableByCountry.add(new HashMap<>());
+            reservedByCountry.add(new HashMap<>());
+        }
+        registry.addRegistryListener(this);
+        rebuild();
+    }
+
+    // Number of available animals of a type
+    public synchronized int availableCount(byte type) {
+        return available.get(type).size();
+    }
+
+    // Number of available animals of a type serving in a country
+    public synchronized int availableCount(byte type, String country) {
+        TreeMap<Long, RescueAnimal> animals = availableByCountry.get(type).get(AnimalRegistry.key(country));
+        return animals == null ? 0 : animals.size();
+    }
+
+    // Available animals of a type, in registry order
+    public synchronized List<RescueAnimal> available(byte type) {
+        return new ArrayList<>(available.get(type).values());
+    }
+
+    // Available animals of a type serving in a country, in registry order
+    public synchronized List<RescueAnimal> available(byte type, String country) {
+        TreeMap<Long, RescueAnimal> animals = availableByCountry.get(type).get(AnimalRegistry.key(country));
+        return animals == null ? Collections.emptyList() : new ArrayList<>(animals.values());
+    }
+
+    // Receives the animals of a listing one at a time
+    public interface AnimalWriter {
+        void write(RescueAnimal animal) throws IOException;
+    }
+
+    // Passes every available animal of a type to the writer, in registry order. The
+    // animals are copied out a batch at a time, so the view is locked only while a batch
+    // is copied and never while the writer runs.
+    public void forEachAvailable(byte type, int batchSize, AnimalWriter writer) throws IOException {
+        List<RescueAnimal> batch = new ArrayList<>(batchSize);
+        long after = -1;
+        do {
+            batch.clear();
+            synchronized (this) {
+                for (Map.Entry<Long, RescueAnimal> entry : available.get(type).tailMap(after, false).entrySet()) {
+                    if (batch.size() == batchSize) {
+                        break;
+                    }
+                    batch.add(entry.getValue());
+                    after = entry.getKey();
+                }
+            }
+            for (RescueAnimal animal : batch) {
+                writer.write(animal);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    // Available count per in-service country for a type
+    public synchronized Map<String, Integer> availableCountByCountry(byte type) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, TreeMap<Long, RescueAnimal>> entry : availableByCountry.get(type).entrySet()) {
+            counts.put(countryNames.get(entry.getKey()), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    // Reserved count per in-service country for a type
+    public synchronized Map<String, Integer> reservedCountByCountry(byte type) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : reservedByCountry.get(type).entrySet()) {
+            counts.put(countryNames.get(entry.getKey()), entry.getValue()[0]);
+        }
+        return counts;
+    }
+
+    // Recomputes every set from the registry
+    public synchronized void rebuild() {
+        members.clear();
+        countryNames.clear();
+        for (int type = 0; type < TYPES; type++) {
+            available.get(type).clear();
+            availableByCountry.get(type).clear();
+            reservedByCountry.get(type).clear();
+        }
+        for (Dog dog : registry.getDogs()) {
+            track(dog);
+        }
+        for (Monkey monkey : registry.getMonkeys()) {
+            track(monkey);
+        }
+    }
+
+    @Override
+    public synchronized void animalAdded(RescueAnimal animal) {
+        track(animal);
+    }
+
+    @Override
+    public synchronized void animalsAdded(List<? extends RescueAnimal> animals) {
+        for (RescueAnimal animal : animals) {
+            track(animal);
+        }
+    }
+
+    @Override
+    public synchronized void registryReplaced() {
+        rebuild();
+    }
+
+    @Override
+    public void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        switch (field) {
+            case "reserved":
+            case "trainingStatus":
+            case "inServiceCountry":
+            case "type":
+                update(animal);
+                break;
+            default:
+                // Other fields do not affect availability
+                break;
+        }
+    }
+
+    private void track(RescueAnimal animal) {
+        Membership membership = new Membership(nextSequence++);
+        members.put(animal, membership);
+        apply(animal, membership);
+    }
+
+    // Moves an animal from the sets it was counted in to the ones it belongs to now
+    private synchronized void update(RescueAnimal animal) {
+        Membership membership = members.get(animal);
+        if (membership == null) {
+            return;
+        }
+        byte type = typeCode(animal);
+        String country = AnimalRegistry.key(animal.getInServiceCountry());
+        boolean reserved = animal.getReserved();
+        if (type == membership.type && country.equals(membership.country) && reserved == membership.reserved
+                && isAvailable(animal) == membership.available) {
+            return;
+        }
+        remove(animal, membership);
+        apply(animal, membership);
+    }
+
+    private void apply(RescueAnimal animal, Membership membership) {
+        membership.type = typeCode(animal);
+        membership.country = AnimalRegistry.key(animal.getInServiceCountry());
+        membership.reserved = animal.getReserved();
+        membership.available = isAvailable(animal);
+        countryNames.putIfAbsent(membership.country, animal.getInServiceCountry());
+        if (membership.available) {
+            available.get(membership.type).put(membership.sequence, animal);
+            availableByCountry.get(membership.type).computeIfAbsent(membership.country, c -> new TreeMap<>())
+                    .put(membership.sequence, animal);
+        }
+        if (membership.reserved) {
+            reservedByCountry.get(membership.type).computeIfAbsent(membership.country, c -> new int[1])[0]++;
+        }
+    }
+
+    private void remove(RescueAnimal animal, Membership membership) {
+        if (membership.available) {
+            available.get(membership.type).remove(membership.sequence);
+            TreeMap<Long, RescueAnimal> animals = availableByCountry.get(membership.type).get(membership.country);
+            animals.remove(membership.sequence);
+            if (animals.isEmpty()) {
+                availableByCountry.get(membership.type).remove(membership.country);
+            }
+        }
+        if (membership.reserved) {
+            int[] count = reservedByCountry.get(membership.type).get(membership.country);
+            if (--count[0] == 0) {
+                reservedByCountry.get(membership.type).remove(membership.country);
+            }
+        }
+    }
+
+    // Type code of an animal
+    public static byte typeCode(RescueAnimal animal) {
+        String key = AnimalRegistry.typeKey(animal);
+        return key.equals("dog") ? DOG : key.equals("monkey") ? MONKEY : OTHER;
+    }
+
+    private static boolean isAvailable(RescueAnimal animal) {
+        return !animal.getReserved() && "in service".equalsIgnoreCase(animal.getTrainingStatus());
+    }
+}
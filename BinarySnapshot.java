@@ -0,0 +1,310 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Versioned binary snapshot format, kept alongside the animals.txt CSV format.
+//
+// Layout (big-endian, as written by DataOutputStream):
+//   header      magic "GRSN", version, dog count, monkey count, dictionary id width
+//   dictionary  entry count, then each entry as length + UTF-8 bytes (id 0 is null)
+//   dog block   one column per field, in the order of the Dog constructor, then ids
+//   monkey block one column per field, in the order of the Monkey constructor, then ids
+//
+// Version 1 files have no id column and are still read; their animals get no id.
+//
+// Repeated strings (breed, species, gender, acquisition date, countries, training
+// status) are written once in the dictionary and referenced by id; names are inline.
+// Numeric fields are fixed-width primitive columns and the reserved flags are packed
+// eight to a byte.
+public class BinarySnapshot {
+
+    public static final int MAGIC = 0x4752534E; // "GRSN"
+    public static final int VERSION = 2;
+
+    // Animals read from a snapshot
+    public static class Contents {
+        private final List<Dog> dogs;
+        private final List<Monkey> monkeys;
+
+        Contents(List<Dog> dogs, List<Monkey> monkeys) {
+            this.dogs = dogs;
+            this.monkeys = monkeys;
+        }
+
+        public List<Dog> getDogs() { return dogs; }
+        public List<Monkey> getMonkeys() { return monkeys; }
+    }
+
+    // Writes a snapshot file
+    public static void save(Path path, List<Dog> dogs, List<Monkey> monkeys) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(out, dogs, monkeys);
+        }
+    }
+
+    // Reads a snapshot file
+    public static Contents load(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    // Writes a snapshot to the stream (the stream is flushed but not closed)
+    public static void write(OutputStream stream, List<Dog> dogs, List<Monkey> monkeys) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        for (Dog dog : dogs) {
+            dictionary.add(dog.getBreed());
+            addShared(dictionary, dog);
+        }
+        for (Monkey monkey : monkeys) {
+            dictionary.add(monkey.getSpecies());
+            addShared(dictionary, monkey);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        int idWidth = dictionary.size() <= 0xFF ? 1 : dictionary.size() <= 0xFFFF ? 2 : 4;
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(dogs.size());
+        out.writeInt(monkeys.size());
+        out.writeByte(idWidth);
+
+        out.writeInt(dictionary.size());
+        for (int id = 1; id <= dictionary.size(); id++) {
+            writeString(out, dictionary.values.get(id));
+        }
+
+        for (Dog dog : dogs) writeString(out, dog.getName());
+        for (Dog dog : dogs) writeId(out, idWidth, dictionary.id(dog.getBreed()));
+        writeSharedColumns(out, idWidth, dictionary, dogs);
+        for (Dog dog : dogs) writeString(out, dog.getId());
+
+        for (Monkey monkey : monkeys) writeString(out, monkey.getName());
+        for (Monkey monkey : monkeys) writeId(out, idWidth, dictionary.id(monkey.getSpecies()));
+        for (Monkey monkey : monkeys) out.writeFloat(monkey.getTailLength());
+        for (Monkey monkey : monkeys) out.writeFloat(monkey.getHeight());
+        for (Monkey monkey : monkeys) out.writeFloat(monkey.getBodyLength());
+        writeSharedColumns(out, idWidth, dictionary, monkeys);
+        for (Monkey monkey : monkeys) writeString(out, monkey.getId());
+
+        out.flush();
+    }
+
+    // Reads a snapshot from the stream
+    public static Contents read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an animal snapshot (bad magic number)");
+        }
+        int version = in.readUnsignedShort();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int dogCount = in.readInt();
+        int monkeyCount = in.readInt();
+        int idWidth = in.readUnsignedByte();
+
+        String[] dictionary = new String[in.readInt() + 1];
+        for (int id = 1; id < dictionary.length; id++) {
+            dictionary[id] = readString(in);
+        }
+
+        String[] dogNames = readStrings(in, dogCount);
+        String[] breeds = readIds(in, idWidth, dictionary, dogCount);
+        SharedColumns dogColumns = readSharedColumns(in, idWidth, dictionary, dogCount);
+        String[] dogIds = version == 1 ? new String[dogCount] : readStrings(in, dogCount);
+        List<Dog> dogs = new ArrayList<>(dogCount);
+        for (int i = 0; i < dogCount; i++) {
+            SharedColumns c = dogColumns;
+            Dog dog = new Dog(dogNames[i], breeds[i], c.genders[i], c.ages[i], c.weights[i],
+                    c.acquisitionDates[i], c.acquisitionCountries[i], c.trainingStatuses[i],
+                    c.reserved(i), c.inServiceCountries[i]);
+            dog.setId(dogIds[i]);
+            dogs.add(dog);
+        }
+
+        String[] monkeyNames = readStrings(in, monkeyCount);
+        String[] species = readIds(in, idWidth, dictionary, monkeyCount);
+        float[] tailLengths = readFloats(in, monkeyCount);
+        float[] heights = readFloats(in, monkeyCount);
+        float[] bodyLengths = readFloats(in, monkeyCount);
+        SharedColumns monkeyColumns = readSharedColumns(in, idWidth, dictionary, monkeyCount);
+        String[] monkeyIds = version == 1 ? new String[monkeyCount] : readStrings(in, monkeyCount);
+        List<Monkey> monkeys = new ArrayList<>(monkeyCount);
+        for (int i = 0; i < monkeyCount; i++) {
+            SharedColumns c = monkeyColumns;
+            Monkey monkey = new Monkey(monkeyNames[i], species[i], tailLengths[i], heights[i], bodyLengths[i],
+                    c.genders[i], c.ages[i], c.weights[i], c.acquisitionDates[i], c.acquisitionCountries[i],
+                    c.trainingStatuses[i], c.reserved(i), c.inServiceCountries[i]);
+            monkey.setId(monkeyIds[i]);
+            monkeys.add(monkey);
+        }
+
+        return new Contents(dogs, monkeys);
+    }
+
+    private static void addShared(Dictionary dictionary, RescueAnimal animal) {
+        dictionary.add(animal.getGender());
+        dictionary.add(animal.getAcquisitionDate());
+        dictionary.add(animal.getAcquisitionCountry());
+        dictionary.add(animal.getTrainingStatus());
+        dictionary.add(animal.getInServiceCountry());
+    }
+
+    // Columns for the RescueAnimal fields, written in the same order for dogs and monkeys
+    private static void writeSharedColumns(DataOutputStream out, int idWidth, Dictionary dictionary,
+                                           List<? extends RescueAnimal> animals) throws IOException {
+        for (RescueAnimal a : animals) writeId(out, idWidth, dictionary.id(a.getGender()));
+        for (RescueAnimal a : animals) out.writeInt(a.getAge());
+        for (RescueAnimal a : animals) out.writeFloat(a.getWeight());
+        for (RescueAnimal a : animals) writeId(out, idWidth, dictionary.id(a.getAcquisitionDate()));
+        for (RescueAnimal a : animals) writeId(out, idWidth, dictionary.id(a.getAcquisitionCountry()));
+        for (RescueAnimal a : animals) writeId(out, idWidth, dictionary.id(a.getTrainingStatus()));
+        for (RescueAnimal a : animals) writeId(out, idWidth, dictionary.id(a.getInServiceCountry()));
+
+        // Reserved flags packed into a bitset
+        int bits = 0;
+        int count = 0;
+        for (RescueAnimal a : animals) {
+            if (a.getReserved()) {
+                bits |= 1 << (count & 7);
+            }
+            if ((++count & 7) == 0) {
+                out.writeByte(bits);
+                bits = 0;
+            }
+        }
+        if ((count & 7) != 0) {
+            out.writeByte(bits);
+        }
+    }
+
+    private static SharedColumns readSharedColumns(DataInputStream in, int idWidth, String[] dictionary,
+                                                   int count) throws IOException {
+        SharedColumns c = new SharedColumns();
+        c.genders = readIds(in, idWidth, dictionary, count);
+        c.ages = new int[count];
+        for (int i = 0; i < count; i++) c.ages[i] = in.readInt();
+        c.weights = readFloats(in, count);
+        c.acquisitionDates = readIds(in, idWidth, dictionary, count);
+        c.acquisitionCountries = readIds(in, idWidth, dictionary, count);
+        c.trainingStatuses = readIds(in, idWidth, dictionary, count);
+        c.inServiceCountries = readIds(in, idWidth, dictionary, count);
+        c.reservedBits = new byte[(count + 7) / 8];
+        in.readFully(c.reservedBits);
+        return c;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] readStrings(DataInputStream in, int count) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    private static float[] readFloats(DataInputStream in, int count) throws IOException {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+
+    private static void writeId(DataOutputStream out, int idWidth, int id) throws IOException {
+        switch (idWidth) {
+            case 1: out.writeByte(id); break;
+            case 2: out.writeShort(id); break;
+            default: out.writeInt(id); break;
+        }
+    }
+
+    private static String[] readIds(DataInputStream in, int idWidth, String[] dictionary, int count) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            int id;
+            switch (idWidth) {
+                case 1: id = in.readUnsignedByte(); break;
+                case 2: id = in.readUnsignedShort(); break;
+                default: id = in.readInt(); break;
+            }
+            if (id < 0 || id >= dictionary.length) {
+                throw new IOException("Dictionary id " + id + " out of range");
+            }
+            values[i] = dictionary[id];
+        }
+        return values;
+    }
+
+    // Shared RescueAnimal columns decoded for one block
+    private static class SharedColumns {
+        String[] genders;
+        int[] ages;
+        float[] weights;
+        String[] acquisitionDates;
+        String[] acquisitionCountries;
+        String[] trainingStatuses;
+        String[] inServiceCountries;
+        byte[] reservedBits;
+
+        boolean reserved(int i) {
+            return (reservedBits[i >>> 3] & (1 << (i & 7))) != 0;
+        }
+    }
+
+    // Maps each distinct string to an id; id 0 stands for null
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        Dictionary() {
+            values.add(null);
+        }
+
+        void add(String value) {
+            if (value != null && !ids.containsKey(value)) {
+                ids.put(value, values.size());
+                values.add(value);
+            }
+        }
+
+        int id(String value) {
+            return value == null ? 0 : ids.get(value);
+        }
+
+        int size() {
+            return values.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Intake of many new dogs and monkeys at once, e.g. when a partner shelter is onboarded.
+// Unlike options 1 and 2, which check one name at a time:
+//
+// - every record is validated first, in parallel for large batches; one invalid record
+//   rejects the whole batch and nothing is added
+// - duplicates (same type and name as a registered animal or an earlier record in the
+//   batch) are found in one hash pass and skipped
+// - the remaining animals are added under a single registry lock and published to the
+//   reservation engine and listeners once all of them are in; see
+//   AnimalRegistry.addAllAbsent for what concurrent readers can observe
+public class BulkIntake {
+
+    // Batches at least this large are validated on the fork-join pool
+    public static final int PARALLEL_THRESHOLD = 2048;
+
+    // Outcome of one bulk intake
+    public static class Result {
+        private final List<String> errors;
+        private final List<RescueAnimal> duplicates;
+        private final int added;
+
+        Result(List<String> errors, List<RescueAnimal> duplicates, int added) {
+            this.errors = errors;
+            this.duplicates = duplicates;
+            this.added = added;
+        }
+
+        // False when validation failed and no animal was added
+        public boolean isCommitted() { return errors.isEmpty(); }
+
+        public int getAdded() { return added; }
+
+        // Records skipped because the animal is already registered or repeated in the batch
+        public List<RescueAnimal> getDuplicates() { return duplicates; }
+
+        // One message per invalid record, e.g. "record 12: invalid species 'Gorilla'"
+        public List<String> getErrors() { return errors; }
+    }
+
+    public static Result intake(AnimalRegistry registry, Stream<? extends RescueAnimal> animals) {
+        return intake(registry, animals.collect(Collectors.toList()));
+    }
+
+    // Validates the animals, then adds the ones that are not duplicates as one batch
+    public static Result intake(AnimalRegistry registry, Collection<? extends RescueAnimal> animals) {
+        List<RescueAnimal> batch = new ArrayList<>(animals);
+        IntStream records = IntStream.range(0, batch.size());
+        if (batch.size() >= PARALLEL_THRESHOLD) {
+            records = records.parallel();
+        }
+        List<String> errors = records
+                .mapToObj(i -> {
+                    String problem = validate(batch.get(i));
+                    return problem == null ? null : "record " + (i + 1) + ": " + problem;
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (!errors.isEmpty()) {
+            return new Result(errors, new ArrayList<>(), 0);
+        }
+        List<RescueAnimal> duplicates = registry.addAllAbsent(batch);
+        return new Result(errors, duplicates, batch.size() - duplicates.size());
+    }
+
+    // Reason the record cannot be taken in, or null when it is valid
+    static String validate(RescueAnimal animal) {
+        if (!(animal instanceof Dog) && !(animal instanceof Monkey)) {
+            return "not a dog or monkey";
+        }
+        if (animal.getName() == null || animal.getName().trim().isEmpty()) {
+            return "missing name";
+        }
+        if (animal.getAge() < 0) {
+            return "negative age " + animal.getAge();
+        }
+        if (!isMeasure(animal.getWeight())) {
+            return "invalid weight " + animal.getWeight();
+        }
+        if (animal instanceof Monkey) {
+            Monkey monkey = (Monkey) animal;
+            if (!Monkey.isValidSpecies(monkey.getSpecies())) {
+                return "invalid species '" + monkey.getSpecies() + "'";
+            }
+            if (!isMeasure(monkey.getTailLength()) || !isMeasure(monkey.getHeight()) || !isMeasure(monkey.getBodyLength())) {
+                return "invalid tail length, height or body length";
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMeasure(float value) {
+        return value >= 0 && !Float.isInfinite(value);
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Struct-of-arrays copy of the registry for analytics scans. Each field lives in its own
+// primitive column (ages, weights, monkey measurements), the reserved flags are a
+// bitset, and the string fields that filters use are stored as FieldDictionary ids.
+// Filters and aggregates then run as simple loops over arrays instead of chasing
+// pointers through Dog and Monkey objects.
+//
+// The store keeps one row per registered animal and follows the registry as a
+// RegistryListener, so setter changes are reflected without a rebuild.
+public class ColumnarAnimalStore implements RegistryListener {
+
+    public static final byte DOG = 0;
+    public static final byte MONKEY = 1;
+    public static final byte OTHER = 2;
+
+    private final AnimalRegistry registry;
+
+    private RescueAnimal[] animals = new RescueAnimal[1024];
+    private final Map<RescueAnimal, Integer> rowOf = new IdentityHashMap<>();
+    private int size;
+
+    // Columns
+    private byte[] types = new byte[1024];
+    private int[] ages = new int[1024];
+    private float[] weights = new float[1024];
+    private float[] tailLengths = new float[1024];
+    private float[] heights = new float[1024];
+    private float[] bodyLengths = new float[1024];
+    private int[] trainingStatusIds = new int[1024];
+    private int[] acquisitionCountryIds = new int[1024];
+    private int[] inServiceCountryIds = new int[1024];
+    private final BitSet reserved = new BitSet();
+
+    // Dictionary ids whose training status reads "in service" (any case)
+    private final BitSet inServiceStatusIds = new BitSet();
+
+    public ColumnarAnimalStore(AnimalRegistry registry) {
+        this.registry = registry;
+        registry.addRegistryListener(this);
+        rebuild();
+    }
+
+    // Column code for an animal type name ("dog", "monkey")
+    public static byte typeCode(String type) {
+        String key = AnimalRegistry.key(type);
+        return key.equals("dog") ? DOG : key.equals("monkey") ? MONKEY : OTHER;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Animal stored in a row
+    public synchronized RescueAnimal animalAt(int row) {
+        return animals[row];
+    }
+
+    // Rows of animals of the given type that are not reserved and are in service,
+    // in registry order
+    public synchronized int[] availableRows(byte type) {
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = reserved.nextClearBit(0); row < size; row = reserved.nextClearBit(row + 1)) {
+            if (types[row] == type && isInService(row)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // Number of unreserved, in-service animals of the given type per in-service country
+    public synchronized Map<String, Integer> availableCountByCountry(byte type) {
+        CountryTally tally = new CountryTally();
+        for (int row = reserved.nextClearBit(0); row < size; row = reserved.nextClearBit(row + 1)) {
+            if (types[row] == type && isInService(row)) {
+                tally.add(inServiceCountryIds[row], row, false);
+            }
+        }
+        return tally.toMap();
+    }
+
+    // Number of reserved animals of the given type per in-service country
+    public synchronized Map<String, Integer> reservedCountByCountry(byte type) {
+        CountryTally tally = new CountryTally();
+        for (int row = reserved.nextSetBit(0); row >= 0 && row < size; row = reserved.nextSetBit(row + 1)) {
+            if (types[row] == type) {
+                tally.add(inServiceCountryIds[row], row, false);
+            }
+        }
+        return tally.toMap();
+    }
+
+    // Number of animals of the given type per acquisition country
+    public synchronized Map<String, Integer> countByAcquisitionCountry(byte type) {
+        CountryTally tally = new CountryTally();
+        for (int row = 0; row < size; row++) {
+            if (types[row] == type) {
+                tally.add(acquisitionCountryIds[row], row, true);
+            }
+        }
+        return tally.toMap();
+    }
+
+    // Average weight of the animals of the given type, or 0 when there are none
+    public synchronized double averageWeight(byte type) {
+        double total = 0;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (types[row] == type) {
+                total += weights[row];
+                count++;
+            }
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    // Average age of the animals of the given type, or 0 when there are none
+    public synchronized double averageAge(byte type) {
+        long total = 0;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (types[row] == type) {
+                total += ages[row];
+                count++;
+            }
+        }
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    // Rebuilds every column from the registry
+    public synchronized void rebuild() {
+        Arrays.fill(animals, 0, size, null);
+        rowOf.clear();
+        reserved.clear();
+        size = 0;
+        List<Dog> dogs = registry.getDogs();
+        List<Monkey> monkeys = registry.getMonkeys();
+        ensureCapacity(dogs.size() + monkeys.size());
+        for (Dog dog : dogs) {
+            append(dog);
+        }
+        for (Monkey monkey : monkeys) {
+            append(monkey);
+        }
+    }
+
+    @Override
+    public synchronized void animalAdded(RescueAnimal animal) {
+        ensureCapacity(size + 1);
+        append(animal);
+    }
+
+    @Override
+    public synchronized void registryReplaced() {
+        rebuild();
+    }
+
+    // Copies a changed field into its column
+    @Override
+    public synchronized void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        Integer row = rowOf.get(animal);
+        if (row == null) {
+            return;
+        }
+        switch (field) {
+            case "type": types[row] = typeCode(AnimalRegistry.typeKey(animal)); break;
+            case "age": ages[row] = animal.getAge(); break;
+            case "weight": weights[row] = animal.getWeight(); break;
+            case "tailLength": tailLengths[row] = ((Monkey) animal).getTailLength(); break;
+            case "height": heights[row] = ((Monkey) animal).getHeight(); break;
+            case "bodyLength": bodyLengths[row] = ((Monkey) animal).getBodyLength(); break;
+            case "trainingStatus": trainingStatusIds[row] = statusId(animal.getTrainingStatus()); break;
+            case "acquisitionCountry": acquisitionCountryIds[row] = FieldDictionary.id(animal.getAcquisitionCountry()); break;
+            case "inServiceCountry": inServiceCountryIds[row] = FieldDictionary.id(animal.getInServiceCountry()); break;
+            case "reserved": reserved.set(row, animal.getReserved()); break;
+            default: break;
+        }
+    }
+
+    // Counts rows per dictionary id; rows without an id fall back to the animal's String
+    private class CountryTally {
+        private final int[] counts = new int[FieldDictionary.size()];
+        private final Map<String, Integer> unencoded = new LinkedHashMap<>();
+
+        void add(int id, int row, boolean acquisition) {
+            if (id >= 0 && id < counts.length) {
+                counts[id]++;
+            } else {
+                RescueAnimal animal = animals[row];
+                String country = acquisition ? animal.getAcquisitionCountry() : animal.getInServiceCountry();
+                unencoded.merge(country, 1, Integer::sum);
+            }
+        }
+
+        Map<String, Integer> toMap() {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int id = 0; id < counts.length; id++) {
+                if (counts[id] > 0) {
+                    result.put(FieldDictionary.value(id), counts[id]);
+                }
+            }
+            unencoded.forEach((country, count) -> result.merge(country, count, Integer::sum));
+            return result;
+        }
+    }
+
+    private boolean isInService(int row) {
+        int id = trainingStatusIds[row];
+        return id >= 0 ? inServiceStatusIds.get(id) : "in service".equalsIgnoreCase(animals[row].getTrainingStatus());
+    }
+
+    // Dictionary id for a training status, remembering whether it means "in service"
+    private int statusId(String status) {
+        int id = FieldDictionary.id(status);
+        if (id > 0 && status.equalsIgnoreCase("in service")) {
+            inServiceStatusIds.set(id);
+        }
+        return id;
+    }
+
+    private void append(RescueAnimal animal) {
+        int row = size++;
+        animals[row] = animal;
+        rowOf.put(animal, row);
+        types[row] = typeCode(AnimalRegistry.typeKey(animal));
+        ages[row] = animal.getAge();
+        weights[row] = animal.getWeight();
+        if (animal instanceof Monkey) {
+            Monkey monkey = (Monkey) animal;
+            tailLengths[row] = monkey.getTailLength();
+            heights[row] = monkey.getHeight();
+            bodyLengths[row] = monkey.getBodyLength();
+        } else {
+            tailLengths[row] = 0;
+            heights[row] = 0;
+            bodyLengths[row] = 0;
+        }
+        trainingStatusIds[row] = statusId(animal.getTrainingStatus());
+        acquisitionCountryIds[row] = FieldDictionary.id(animal.getAcquisitionCountry());
+        inServiceCountryIds[row] = FieldDictionary.id(animal.getInServiceCountry());
+        reserved.set(row, animal.getReserved());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= animals.length) {
+            return;
+        }
+        int next = Math.max(capacity, animals.length * 2);
+        animals = Arrays.copyOf(animals, next);
+        types = Arrays.copyOf(types, next);
+        ages = Arrays.copyOf(ages, next);
+        weights = Arrays.copyOf(weights, next);
+        tailLengths = Arrays.copyOf(tailLengths, next);
+        heights = Arrays.copyOf(heights, next);
+        bodyLengths = Arrays.copyOf(bodyLengths, next);
+        trainingStatusIds = Arrays.copyOf(trainingStatusIds, next);
+        acquisitionCountryIds = Arrays.copyOf(acquisitionCountryIds, next);
+        inServiceCountryIds = Arrays.copyOf(inServiceCountryIds, next);
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Block-compressed, checksummed container for BinarySnapshot data.
+//
+// Layout (big-endian):
+//   header   magic "GRSZ", version
+//   blocks   raw length, compressed length, CRC32C of the compressed bytes, then the
+//            Deflate-compressed bytes of one BinarySnapshot holding up to BLOCK_ANIMALS
+//            dogs or monkeys
+//   trailer  -1, block count, dog count, monkey count
+//
+// The file is written to a temporary sibling, forced to disk and renamed over the old
+// one, so a crash leaves either the previous snapshot or the new one, never a torn file.
+// A missing trailer or a checksum mismatch fails the load instead of returning part of
+// the data. Blocks are independent, so load checks and decompresses them in parallel.
+public class CompressedSnapshot {
+
+    public static final int MAGIC = 0x4752535A; // "GRSZ"
+    public static final int VERSION = 1;
+
+    // Animals per block; large enough to compress well, small enough to spread a load
+    // over every core
+    public static final int BLOCK_ANIMALS = 8 * 1024;
+
+    private static final int END_OF_BLOCKS = -1;
+
+    // Animals to write, fetched one block at a time
+    public interface Source {
+        int dogCount();
+
+        int monkeyCount();
+
+        List<Dog> dogs(int from, int to);
+
+        List<Monkey> monkeys(int from, int to);
+    }
+
+    // Writes the given lists; the caller must keep them from changing until it returns
+    public static long save(Path path, List<Dog> dogs, List<Monkey> monkeys) throws IOException {
+        return save(path, new Source() {
+            @Override public int dogCount() { return dogs.size(); }
+            @Override public int monkeyCount() { return monkeys.size(); }
+            @Override public List<Dog> dogs(int from, int to) { return dogs.subList(from, to); }
+            @Override public List<Monkey> monkeys(int from, int to) { return monkeys.subList(from, to); }
+        });
+    }
+
+    // Writes a snapshot and atomically replaces the file; returns its size in bytes
+    public static long save(Path path, Source source) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(1024 * 1024);
+            byte[] compressed = new byte[64 * 1024];
+            int blocks = 0;
+            int dogCount = source.dogCount();
+            int monkeyCount = source.monkeyCount();
+            for (int from = 0; from < dogCount; from += BLOCK_ANIMALS) {
+                raw.reset();
+                BinarySnapshot.write(raw, source.dogs(from, Math.min(dogCount, from + BLOCK_ANIMALS)),
+                        Collections.emptyList());
+                compressed = writeBlock(out, raw, deflater, compressed);
+                blocks++;
+            }
+            for (int from = 0; from < monkeyCount; from += BLOCK_ANIMALS) {
+                raw.reset();
+                BinarySnapshot.write(raw, Collections.emptyList(),
+                        source.monkeys(from, Math.min(monkeyCount, from + BLOCK_ANIMALS)));
+                compressed = writeBlock(out, raw, deflater, compressed);
+                blocks++;
+            }
+            out.writeInt(END_OF_BLOCKS);
+            out.writeInt(blocks);
+            out.writeInt(dogCount);
+            out.writeInt(monkeyCount);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            deflater.end();
+        }
+        long size = Files.size(temp);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    // Reads a snapshot, verifying and decompressing blocks on the fork-join pool. Files
+    // in the uncompressed BinarySnapshot format are read as well.
+    public static BinarySnapshot.Contents load(Path path) throws IOException {
+        List<ForkJoinTask<BinarySnapshot.Contents>> tasks = new ArrayList<>();
+        int dogCount;
+        int monkeyCount;
+        try (InputStream stream = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024))) {
+            int magic = in.readInt();
+            if (magic == BinarySnapshot.MAGIC) {
+                return BinarySnapshot.load(path);
+            }
+            if (magic != MAGIC) {
+                throw new IOException("Not an animal snapshot (bad magic number)");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compressed snapshot version " + version);
+            }
+            try {
+                int frame;
+                while ((frame = in.readInt()) != END_OF_BLOCKS) {
+                    int rawLength = frame;
+                    int compressedLength = in.readInt();
+                    int checksum = in.readInt();
+                    if (rawLength < 0 || compressedLength < 0) {
+                        throw new IOException("Corrupt snapshot block header in block " + tasks.size());
+                    }
+                    byte[] compressed = new byte[compressedLength];
+                    in.readFully(compressed);
+                    int block = tasks.size();
+                    tasks.add(ForkJoinPool.commonPool().submit(
+                            () -> readBlock(block, compressed, checksum, rawLength)));
+                }
+                int blocks = in.readInt();
+                dogCount = in.readInt();
+                monkeyCount = in.readInt();
+                if (blocks != tasks.size()) {
+                    throw new IOException("Snapshot has " + tasks.size() + " blocks but its trailer lists " + blocks);
+                }
+            } catch (EOFException e) {
+                tasks.forEach(task -> task.cancel(false));
+                throw new IOException("Snapshot is truncated after " + tasks.size() + " block(s)", e);
+            }
+        }
+
+        List<Dog> dogs = new ArrayList<>(dogCount);
+        List<Monkey> monkeys = new ArrayList<>(monkeyCount);
+        for (ForkJoinTask<BinarySnapshot.Contents> task : tasks) {
+            BinarySnapshot.Contents contents = join(task);
+            dogs.addAll(contents.getDogs());
+            monkeys.addAll(contents.getMonkeys());
+        }
+        if (dogs.size() != dogCount || monkeys.size() != monkeyCount) {
+            throw new IOException("Snapshot blocks hold " + dogs.size() + " dogs and " + monkeys.size()
+                    + " monkeys but its trailer lists " + dogCount + " and " + monkeyCount);
+        }
+        return new BinarySnapshot.Contents(dogs, monkeys);
+    }
+
+    // Compresses one serialized block and writes it with its frame; returns the
+    // (possibly grown) compression buffer for the next block
+    private static byte[] writeBlock(DataOutputStream out, ByteArrayOutputStream raw, Deflater deflater,
+                                     byte[] buffer) throws IOException {
+        byte[] bytes = raw.toByteArray();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer, 0, length);
+        out.writeInt(bytes.length);
+        out.writeInt(length);
+        out.writeInt((int) crc.getValue());
+        out.write(buffer, 0, length);
+        return buffer;
+    }
+
+    private static BinarySnapshot.Contents readBlock(int block, byte[] compressed, int checksum, int rawLength)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(compressed, 0, compressed.length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Snapshot block " + block + " is corrupt (checksum mismatch)");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength || !inflater.finished()) {
+                throw new IOException("Snapshot block " + block + " did not decompress to " + rawLength + " bytes");
+            }
+            return BinarySnapshot.read(new ByteArrayInputStream(raw));
+        } catch (DataFormatException e) {
+            throw new IOException("Snapshot block " + block + " is corrupt: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static BinarySnapshot.Contents join(ForkJoinTask<BinarySnapshot.Contents> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading snapshot", e);
+        } catch (ExecutionException e) {
+            // The pool wraps a block's IOException in a RuntimeException
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -25,7 +25,7 @@ public class Dog extends RescueAnimal {
         setReserved(reserved);
         setInServiceCountry(inServiceCountry);
 
-        this.breed = breed;
+        this.breed = FieldDictionary.intern(breed);
     }
 
     // Getter for breed
@@ -35,7 +35,9 @@ public class Dog extends RescueAnimal {
 
    
     public void setBreed(String breed) {
-        this.breed = breed;
+        String old = this.breed;
+        this.breed = FieldDictionary.intern(breed);
+        fireChange("breed", old, breed);
     }
 
     public String getAcquisitionCountry() {
@@ -1,14 +1,50 @@
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 public class Driver {
 
-    // Global lists to store Dog and Monkey objects
-    private static ArrayList<Dog> dogList = new ArrayList<>();
-    private static ArrayList<Monkey> monkeyList = new ArrayList<>();
+    // Registry that owns the Dog and Monkey objects and their lookup indexes
+    private static AnimalRegistry registry = new AnimalRegistry();
+
+    // Compressed snapshot file written in the background by option 10 and read by option 11
+    private static final String SNAPSHOT_FILE = "animals.snapshot";
+    private static SnapshotSaver snapshots = new SnapshotSaver(registry, Paths.get(SNAPSHOT_FILE));
+
+    // Journal of changes made since animals.txt was last written
+    private static final String JOURNAL_FILE = "animals.journal";
+
+    // JSON files shared with the web frontend (options 13 and 14)
+    private static final String DOGS_JSON = "webapp/backend/dogs.json";
+    private static final String MONKEYS_JSON = "webapp/backend/monkeys.json";
+    private static AnimalJournal journal = new AnimalJournal(registry, Paths.get("animals.txt"), Paths.get(JOURNAL_FILE));
+
+    // Incrementally maintained available animals and per-country counts
+    private static AvailabilityView availability = new AvailabilityView(registry);
+
+    // Prefix, fuzzy and multi-field search over the registry
+    private static AnimalSearchEngine search = new AnimalSearchEngine(registry);
+    private static final int SEARCH_PAGE_SIZE = 25;
+
+    // Rows per page for the dog and monkey listings
+    private static final int LIST_PAGE_SIZE = 25;
+
+    // Operation timings and counts, shown by option 15 and written to metrics.prom
+    private static AnimalMetrics metrics = new AnimalMetrics(registry, availability);
+    private static final String METRICS_FILE = "metrics.prom";
 
     // Displays the main menu
     public static void displayMenu() {
@@ -17,39 +53,49 @@ public class Driver {
         System.out.println("[1] Intake a new dog");
         System.out.println("[2] Intake a new monkey");
         System.out.println("[3] Reserve an animal");
-        System.out.println("[4] Print a list of all dogs");
-        System.out.println("[5] Print a list of all monkeys");
+        System.out.println("[4] Print a list of all dogs (page by page)");
+        System.out.println("[5] Print a list of all monkeys (page by page)");
         System.out.println("[6] Print a list of all animals that are not reserved");
-        System.out.println("[7] Search animal by name, type, or acquisition country");
+        System.out.println("[7] Search animal by name, type, or acquisition country (or prefix, fuzzy, filter)");
         System.out.println("[8] Save animal data to file");
-        System.out.println("[9] Load animal data from file");            
+        System.out.println("[9] Load animal data from file");
+        System.out.println("[10] Save snapshot (in the background)");
+        System.out.println("[11] Load snapshot");
+        System.out.println("[12] Export a list as CSV or TSV");
+        System.out.println("[13] Export animals to webapp/backend/dogs.json and monkeys.json");
+        System.out.println("[14] Import animals from webapp/backend/dogs.json and monkeys.json");
+        System.out.println("[15] Show metrics and write " + METRICS_FILE);
+        System.out.println("[16] Intake a partner shelter's animals from a file");
         System.out.println("[q] Quit application");
         System.out.println();
     }
 
     // Populates the dog list with sample data
     public static void initializeDogList() {
-        dogList.add(new Dog("Spot", "German Shepherd", "male", 1, 25.6f, "05-12-2019", "United States", "intake", false, "United States"));
-        dogList.add(new Dog("Rex", "Great Dane", "male", 3, 35.2f, "02-03-2020", "United States", "Phase I", false, "United States"));
-        dogList.add(new Dog("Bella", "Chihuahua", "female", 4, 25.6f, "12-12-2019", "Canada", "in service", true, "Canada"));
+        registry.addDog(new Dog("Spot", "German Shepherd", "male", 1, 25.6f, "05-12-2019", "United States", "intake", false, "United States"));
+        registry.addDog(new Dog("Rex", "Great Dane", "male", 3, 35.2f, "02-03-2020", "United States", "Phase I", false, "United States"));
+        registry.addDog(new Dog("Bella", "Chihuahua", "female", 4, 25.6f, "12-12-2019", "Canada", "in service", true, "Canada"));
     }
 
     // Populates the monkey list with sample data
     public static void initializeMonkeyList() {
-        monkeyList.add(new Monkey("Marcel", "Capuchin", 5.2f, 9.4f, 19.6f, "male", 2, 15.3f, "09-11-2019", "Canada", "Phase I", true, "Canada"));
-        monkeyList.add(new Monkey("Kong", "Macaque", 4.8f, 10.2f, 20.7f, "female", 1, 17.4f, "12-05-2020", "United Kingdom", "in service", false, "United Kingdom"));
-        monkeyList.add(new Monkey("Pat", "Tamarin", 5.5f, 8.6f, 18.4f, "male", 3, 18.2f, "12-10-2019", "United States", "intake", false, "United States"));
+        registry.addMonkey(new Monkey("Marcel", "Capuchin", 5.2f, 9.4f, 19.6f, "male", 2, 15.3f, "09-11-2019", "Canada", "Phase I", true, "Canada"));
+        registry.addMonkey(new Monkey("Kong", "Macaque", 4.8f, 10.2f, 20.7f, "female", 1, 17.4f, "12-05-2020", "United Kingdom", "in service", false, "United Kingdom"));
+        registry.addMonkey(new Monkey("Pat", "Tamarin", 5.5f, 8.6f, 18.4f, "male", 3, 18.2f, "12-10-2019", "United States", "intake", false, "United States"));
     }
 
     // Intake new Dog with input validation
     public static void intakeNewDog(Scanner scanner) {
         System.out.println("What is the dog's name?");
         String name = scanner.nextLine();
-        for (Dog dog : dogList) {
-            if (dog.getName().equalsIgnoreCase(name)) {
-                System.out.println("This dog is already in our system.");
-                return;
-            }
+        long start = System.nanoTime();
+        boolean duplicate = registry.findDog(name) != null;
+        long checkNanos = System.nanoTime() - start;
+        if (duplicate) {
+            metrics.record(AnimalMetrics.INTAKE, checkNanos);
+            metrics.count("intake_duplicate", 1);
+            System.out.println("This dog is already in our system.");
+            return;
         }
 
         System.out.print("Breed: ");
@@ -71,7 +117,10 @@ public class Driver {
         System.out.print("In-service country: ");
         String inServiceCountry = scanner.nextLine();
 
-        dogList.add(new Dog(name, breed, gender, age, weight, acqDate, acqCountry, trainingStatus, reserved, inServiceCountry));
+        start = System.nanoTime();
+        registry.addDog(new Dog(name, breed, gender, age, weight, acqDate, acqCountry, trainingStatus, reserved, inServiceCountry));
+        metrics.record(AnimalMetrics.INTAKE, checkNanos + System.nanoTime() - start);
+        metrics.count("intake_added", 1);
         System.out.println("Dog added successfully.");
     }
 
@@ -79,18 +128,19 @@ public class Driver {
     public static void intakeNewMonkey(Scanner scanner) {
         System.out.println("What is the monkey's name?");
         String name = scanner.nextLine();
-        for (Monkey monkey : monkeyList) {
-            if (monkey.getName().equalsIgnoreCase(name)) {
-                System.out.println("This monkey is already in our system.");
-                return;
-            }
+        long start = System.nanoTime();
+        boolean duplicate = registry.findMonkey(name) != null;
+        long checkNanos = System.nanoTime() - start;
+        if (duplicate) {
+            metrics.record(AnimalMetrics.INTAKE, checkNanos);
+            metrics.count("intake_duplicate", 1);
+            System.out.println("This monkey is already in our system.");
+            return;
         }
 
         System.out.print("Species: ");
         String species = scanner.nextLine();
-        if (!(species.equalsIgnoreCase("Capuchin") || species.equalsIgnoreCase("Guenon")
-                || species.equalsIgnoreCase("Macaque") || species.equalsIgnoreCase("Marmoset")
-                || species.equalsIgnoreCase("Squirrel Monkey") || species.equalsIgnoreCase("Tamarin"))) {
+        if (!Monkey.isValidSpecies(species)) {
             System.out.println("Invalid species.");
             return;
         }
@@ -118,10 +168,49 @@ public class Driver {
         System.out.print("In-service country: ");
         String inServiceCountry = scanner.nextLine();
 
-        monkeyList.add(new Monkey(name, species, tailLength, height, bodyLength, gender, age, weight, acqDate, acqCountry, trainingStatus, reserved, inServiceCountry));
+        start = System.nanoTime();
+        registry.addMonkey(new Monkey(name, species, tailLength, height, bodyLength, gender, age, weight, acqDate, acqCountry, trainingStatus, reserved, inServiceCountry));
+        metrics.record(AnimalMetrics.INTAKE, checkNanos + System.nanoTime() - start);
+        metrics.count("intake_added", 1);
         System.out.println("Monkey added successfully.");
     }
 
+    // Intake every animal in a file in the animals.txt format as one batch; see BulkIntake
+    public static void intakeShelter(Scanner scanner) {
+        System.out.print("Shelter file (animals.txt format): ");
+        String fileName = scanner.nextLine().trim();
+        long start = System.nanoTime();
+        try {
+            AnimalLoader.Result loaded = AnimalLoader.load(Paths.get(fileName));
+            if (!loaded.getErrors().isEmpty()) {
+                printRejected(loaded.getErrors().size() + " line(s) could not be parsed", loaded.getErrors());
+                return;
+            }
+            List<RescueAnimal> animals = new ArrayList<>(loaded.getDogs());
+            animals.addAll(loaded.getMonkeys());
+            BulkIntake.Result result = BulkIntake.intake(registry, animals);
+            metrics.record(AnimalMetrics.INTAKE, System.nanoTime() - start);
+            if (!result.isCommitted()) {
+                printRejected(result.getErrors().size() + " record(s) are invalid", result.getErrors());
+                return;
+            }
+            metrics.count("intake_added", result.getAdded());
+            metrics.count("intake_duplicate", result.getDuplicates().size());
+            System.out.println("Added " + result.getAdded() + " animal(s); skipped "
+                    + result.getDuplicates().size() + " already in our system.");
+        } catch (IOException e) {
+            System.out.println("Error reading " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    private static void printRejected(String reason, List<String> errors) {
+        System.out.println("Nothing was added; " + reason + ":");
+        errors.stream().limit(10).forEach(error -> System.out.println("  " + error));
+        if (errors.size() > 10) {
+            System.out.println("  ... and " + (errors.size() - 10) + " more");
+        }
+    }
+
     // Reserve an available animal
     public static void reserveAnimal(Scanner scanner) {
         System.out.print("Enter animal type (dog/monkey): ");
@@ -129,112 +218,170 @@ public class Driver {
         System.out.print("Enter in-service country: ");
         String country = scanner.nextLine();
 
-        if (type.equals("dog")) {
-            for (Dog dog : dogList) {
-                if (!dog.getReserved() && dog.getInServiceCountry().equalsIgnoreCase(country)) {
-                    dog.setReserved(true);
-                    System.out.println("Dog " + dog.getName() + " has been reserved.");
-                    return;
-                }
-            }
-        } else if (type.equals("monkey")) {
-            for (Monkey monkey : monkeyList) {
-                if (!monkey.getReserved() && monkey.getInServiceCountry().equalsIgnoreCase(country)) {
-                    monkey.setReserved(true);
-                    System.out.println("Monkey " + monkey.getName() + " has been reserved.");
-                    return;
-                }
-            }
-        } else {
+        if (!(type.equals("dog") || type.equals("monkey"))) {
             System.out.println("Invalid animal type.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        RescueAnimal animal = registry.reserve(type, country);
+        metrics.record(AnimalMetrics.RESERVE, System.nanoTime() - start);
+        metrics.count(animal != null ? "reserve_success" : "reserve_unavailable", 1);
+        if (animal != null) {
+            System.out.println(typeLabel(animal) + " " + animal.getName() + " has been reserved.");
         }
     }
 
     // Print animals by type or availability with full attributes
     public static void printAnimals(String listType) {
-        if (listType.equalsIgnoreCase("dog")) {
-            System.out.println("All Dogs:");
-            for (Dog dog : dogList) {
-                System.out.println("Dog: " + dog.getName() +
-                    " | Breed: " + dog.getBreed() +
-                    " | Gender: " + dog.getGender() +
-                    " | Age: " + dog.getAge() +
-                    " | Weight: " + dog.getWeight() +
-                    " | Training: " + dog.getTrainingStatus() +
-                    " | Reserved: " + dog.getReserved() +
-                    " | Country: " + dog.getAcquisitionCountry() +
-                    " | In Service: " + dog.getInServiceCountry());
-            }
-
-        } else if (listType.equalsIgnoreCase("monkey")) {
-            System.out.println("All Monkeys:");
-            for (Monkey monkey : monkeyList) {
-                System.out.println("Monkey: " + monkey.getName() +
-                    " | Species: " + monkey.getSpecies() +
-                    " | Gender: " + monkey.getGender() +
-                    " | Age: " + monkey.getAge() +
-                    " | Weight: " + monkey.getWeight() +
-                    " | Tail Length: " + monkey.getTailLength() +
-                    " | Height: " + monkey.getHeight() +
-                    " | Body Length: " + monkey.getBodyLength() +
-                    " | Training: " + monkey.getTrainingStatus() +
-                    " | Reserved: " + monkey.getReserved() +
-                    " | Country: " + monkey.getAcquisitionCountry() +
-                    " | In Service: " + monkey.getInServiceCountry());
-            }
+        if (!isListType(listType)) {
+            System.out.println("Invalid list type. Please use 'dog', 'monkey', or 'available'.");
+            return;
+        }
+        try (ReportRenderer renderer = ReportRenderer.toStdout(ReportRenderer.Format.CONSOLE)) {
+            renderList(renderer, listType);
+        } catch (IOException e) {
+            System.out.println("Error printing animals: " + e.getMessage());
+        }
+    }
 
-        } else if (listType.equalsIgnoreCase("available")) {
-            System.out.println("Available Dogs:");
-            for (Dog dog : dogList) {
-                if (!dog.getReserved() && dog.getTrainingStatus().equalsIgnoreCase("in service")) {
-                    System.out.println("Dog: " + dog.getName() + " | In Service Country: " + dog.getInServiceCountry());
+    // Print dogs or monkeys one page at a time in list, name or acquisition date order
+    public static void printAnimalPages(Scanner scanner, String listType) {
+        System.out.print("Sort by (list/name/date): ");
+        String sortName = scanner.nextLine().trim();
+        AnimalPager.Order order;
+        if (sortName.isEmpty() || sortName.equalsIgnoreCase("list")) {
+            order = AnimalPager.Order.LIST;
+        } else if (sortName.equalsIgnoreCase("name")) {
+            order = AnimalPager.Order.NAME;
+        } else if (sortName.equalsIgnoreCase("date")) {
+            order = AnimalPager.Order.ACQUISITION_DATE;
+        } else {
+            System.out.println("Invalid sort. Please use 'list', 'name', or 'date'.");
+            return;
+        }
+        boolean dogs = listType.equalsIgnoreCase("dog");
+        try (AnimalPager<Dog> dogPager = AnimalPager.dogs(registry);
+             AnimalPager<Monkey> monkeyPager = AnimalPager.monkeys(registry);
+             ReportRenderer renderer = ReportRenderer.toStdout(ReportRenderer.Format.CONSOLE)) {
+            System.out.println(dogs ? "All Dogs:" : "All Monkeys:");
+            String token = null;
+            while (true) {
+                if (dogs) {
+                    AnimalPager.Page<Dog> page = dogPager.page(order, LIST_PAGE_SIZE, token);
+                    renderer.dogRows(page.getAnimals());
+                    token = page.getNextToken();
+                } else {
+                    AnimalPager.Page<Monkey> page = monkeyPager.page(order, LIST_PAGE_SIZE, token);
+                    renderer.monkeyRows(page.getAnimals());
+                    token = page.getNextToken();
                 }
-            }
-
-            System.out.println("Available Monkeys:");
-            for (Monkey monkey : monkeyList) {
-                if (!monkey.getReserved() && monkey.getTrainingStatus().equalsIgnoreCase("in service")) {
-                    System.out.println("Monkey: " + monkey.getName() + " | In Service Country: " + monkey.getInServiceCountry());
+                if (token == null) {
+                    return;
+                }
+                System.out.print("Show more animals? (yes/no): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+                    return;
                 }
             }
+        } catch (IOException e) {
+            System.out.println("Error printing animals: " + e.getMessage());
+        }
+    }
 
-        } else {
+    // Export a listing as CSV or TSV to a file or to the console
+    public static void exportAnimals(Scanner scanner) {
+        System.out.print("List to export (dog/monkey/available): ");
+        String listType = scanner.nextLine().trim();
+        if (!isListType(listType)) {
             System.out.println("Invalid list type. Please use 'dog', 'monkey', or 'available'.");
+            return;
+        }
+        System.out.print("Format (csv/tsv): ");
+        String formatName = scanner.nextLine().trim();
+        ReportRenderer.Format format;
+        if (formatName.equalsIgnoreCase("csv")) {
+            format = ReportRenderer.Format.CSV;
+        } else if (formatName.equalsIgnoreCase("tsv")) {
+            format = ReportRenderer.Format.TSV;
+        } else {
+            System.out.println("Invalid format. Please use 'csv' or 'tsv'.");
+            return;
+        }
+        System.out.print("File name (leave blank for console): ");
+        String fileName = scanner.nextLine().trim();
+
+        try (ReportRenderer renderer = fileName.isEmpty()
+                ? ReportRenderer.toStdout(format)
+                : ReportRenderer.toFile(Paths.get(fileName), format)) {
+            renderList(renderer, listType);
+        } catch (IOException e) {
+            System.out.println("Error exporting animals: " + e.getMessage());
+            return;
+        }
+        if (!fileName.isEmpty()) {
+            System.out.println("Exported " + listType.toLowerCase() + " list to " + fileName);
+        }
+    }
+
+    private static boolean isListType(String listType) {
+        return listType.equalsIgnoreCase("dog") || listType.equalsIgnoreCase("monkey")
+                || listType.equalsIgnoreCase("available");
+    }
+
+    private static void renderList(ReportRenderer renderer, String listType) throws IOException {
+        if (listType.equalsIgnoreCase("dog")) {
+            renderer.dogs(registry.getDogs());
+        } else if (listType.equalsIgnoreCase("monkey")) {
+            renderer.monkeys(registry.getMonkeys());
+        } else {
+            renderer.available(availability.available(AvailabilityView.DOG),
+                    availability.available(AvailabilityView.MONKEY));
         }
     }
 
 
     // Search animals with input validation
     public static void searchAnimals(Scanner scanner) {
-        System.out.print("Search by (name/type/country): ");
+        System.out.print("Search by (name/prefix/fuzzy/type/country/filter): ");
         String field = scanner.nextLine().toLowerCase();
 
+        if (field.equals("prefix") || field.equals("fuzzy")) {
+            System.out.print("Enter name to search: ");
+            String value = scanner.nextLine();
+            AnimalSearchEngine.NameMatch match = field.equals("prefix")
+                    ? AnimalSearchEngine.NameMatch.PREFIX : AnimalSearchEngine.NameMatch.FUZZY;
+            printSearchPages(scanner, new AnimalSearchEngine.Query().name(value, match));
+            return;
+        }
+        if (field.equals("filter")) {
+            printSearchPages(scanner, readFilterQuery(scanner));
+            return;
+        }
+
         if (!(field.equals("name") || field.equals("type") || field.equals("country"))) {
-            System.out.println("Invalid field. Please enter 'name', 'type', or 'country'.");
+            System.out.println("Invalid field. Please enter 'name', 'prefix', 'fuzzy', 'type', 'country', or 'filter'.");
             return;
         }
 
         System.out.print("Enter value to search: ");
         String value = scanner.nextLine().toLowerCase();
 
-        boolean found = false;
-
-        for (Dog dog : dogList) {
-            if ((field.equals("name") && dog.getName().equalsIgnoreCase(value)) ||
-                (field.equals("type") && "dog".equalsIgnoreCase(value)) ||
-                (field.equals("country") && dog.getAcquisitionCountry().equalsIgnoreCase(value))) {
-                System.out.println("Dog: " + dog.getName() + " | " + dog.getTrainingStatus() + " | " + dog.getAcquisitionCountry());
-                found = true;
-            }
+        long start = System.nanoTime();
+        List<RescueAnimal> matches;
+        if (field.equals("name")) {
+            matches = registry.findByName(value);
+        } else if (field.equals("type")) {
+            matches = registry.findByType(value);
+        } else {
+            matches = registry.findByAcquisitionCountry(value);
         }
+        metrics.record(AnimalMetrics.SEARCH, System.nanoTime() - start);
+        metrics.count("search_results", matches.size());
 
-        for (Monkey monkey : monkeyList) {
-            if ((field.equals("name") && monkey.getName().equalsIgnoreCase(value)) ||
-                (field.equals("type") && "monkey".equalsIgnoreCase(value)) ||
-                (field.equals("country") && monkey.getAcquisitionCountry().equalsIgnoreCase(value))) {
-                System.out.println("Monkey: " + monkey.getName() + " | " + monkey.getTrainingStatus() + " | " + monkey.getAcquisitionCountry());
-                found = true;
-            }
+        boolean found = !matches.isEmpty();
+        for (RescueAnimal animal : matches) {
+            printSearchResult(animal);
         }
 
         if (!found) {
@@ -242,58 +389,268 @@ public class Driver {
         }
     }
 
-    // Save all animal data to a file
+    // Prompt for a combined filter; blank answers leave that field unrestricted
+    private static AnimalSearchEngine.Query readFilterQuery(Scanner scanner) {
+        AnimalSearchEngine.Query query = new AnimalSearchEngine.Query();
+        System.out.print("Animal type (dog/monkey, blank for any): ");
+        String type = scanner.nextLine().trim();
+        if (!type.isEmpty()) {
+            query.where(AnimalSearchEngine.TYPE, type);
+        }
+        System.out.print("In-service country (blank for any): ");
+        String country = scanner.nextLine().trim();
+        if (!country.isEmpty()) {
+            query.where(AnimalSearchEngine.IN_SERVICE_COUNTRY, country);
+        }
+        System.out.print("Training status (blank for any): ");
+        String status = scanner.nextLine().trim();
+        if (!status.isEmpty()) {
+            query.where(AnimalSearchEngine.TRAINING_STATUS, status);
+        }
+        System.out.print("Only unreserved animals? (yes/no): ");
+        query.unreservedOnly(scanner.nextLine().trim().equalsIgnoreCase("yes"));
+        return query;
+    }
+
+    // Print ranked results one page at a time
+    private static void printSearchPages(Scanner scanner, AnimalSearchEngine.Query query) {
+        int offset = 0;
+        while (true) {
+            long start = System.nanoTime();
+            AnimalSearchEngine.Page page = search.search(query.page(offset, SEARCH_PAGE_SIZE));
+            metrics.record(AnimalMetrics.SEARCH, System.nanoTime() - start);
+            metrics.count("search_results", page.getHits().size());
+            if (page.getHits().isEmpty() && offset == 0) {
+                System.out.println("No matching animal found.");
+                return;
+            }
+            for (AnimalSearchEngine.Hit hit : page.getHits()) {
+                printSearchResult(hit.getAnimal());
+            }
+            if (!page.hasMore()) {
+                return;
+            }
+            System.out.print("Show more results? (yes/no): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+                return;
+            }
+            offset = page.nextOffset();
+        }
+    }
+
+    private static void printSearchResult(RescueAnimal animal) {
+        System.out.println(typeLabel(animal) + ": " + animal.getName() + " | " + animal.getTrainingStatus() + " | " + animal.getAcquisitionCountry());
+    }
+
+    // Display label for an animal's type ("Dog" or "Monkey")
+    private static String typeLabel(RescueAnimal animal) {
+        return animal instanceof Monkey ? "Monkey" : "Dog";
+    }
+
+    // Save animal data in the background: appends pending changes to the journal, or
+    // rewrites animals.txt when the journal needs compacting. The menu stays usable
+    // while it runs.
     public static void saveAnimalData() {
-        try (PrintWriter writer = new PrintWriter("animals.txt")) {
-        // Save dogs
-        for (Dog dog : dogList) {
-            writer.println("Dog," + dog.getName() + "," + dog.getBreed() + "," + dog.getGender() + "," + dog.getAge()
-                    + "," + dog.getWeight() + "," + dog.getAcquisitionDate() + "," + dog.getAcquisitionCountry()
-                    + "," + dog.getTrainingStatus() + "," + dog.getReserved() + "," + dog.getInServiceCountry());
-        }
-        // Save monkeys
-        for (Monkey monkey : monkeyList) {
-            writer.println("Monkey," + monkey.getName() + "," + monkey.getSpecies() + "," + monkey.getTailLength()
-                    + "," + monkey.getHeight() + "," + monkey.getBodyLength() + "," + monkey.getGender()
-                    + "," + monkey.getAge() + "," + monkey.getWeight() + "," + monkey.getAcquisitionDate()
-                    + "," + monkey.getAcquisitionCountry() + "," + monkey.getTrainingStatus() + ","
-                    + monkey.getReserved() + "," + monkey.getInServiceCountry());
-        }
-        System.out.println("Animal data saved to animals.txt");
-    } catch (IOException e) {
-        System.out.println("Error saving data: " + e.getMessage());
+        long start = System.nanoTime();
+        journal.saveAsync().whenComplete((records, error) -> {
+            metrics.record(AnimalMetrics.SAVE, System.nanoTime() - start);
+            if (error != null) {
+                metrics.count("save_errors", 1);
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                System.out.println("\nError saving data: " + (cause instanceof UncheckedIOException
+                        ? cause.getCause().getMessage() : cause.getMessage()));
+            } else if (records < 0) {
+                System.out.println("\nAnimal data saved to animals.txt");
+            } else {
+                System.out.println("\nSaved " + records + " change(s) to " + JOURNAL_FILE);
+            }
+        });
+        System.out.println("Saving animal data in the background.");
     }
-}
 
-    // Load animal data from a file
+    // Load animal data from a file, after any save still in progress
     public static void loadAnimalData() {
-        try (Scanner fileScanner = new Scanner(new File("animals.txt"))) {
-            dogList.clear();
-            monkeyList.clear();
-
-        while (fileScanner.hasNextLine()) {
-            String[] tokens = fileScanner.nextLine().split(",");
-            if (tokens[0].equalsIgnoreCase("Dog")) {
-                dogList.add(new Dog(tokens[1], tokens[2], tokens[3], Integer.parseInt(tokens[4]),
-                        Float.parseFloat(tokens[5]), tokens[6], tokens[7], tokens[8],
-                        Boolean.parseBoolean(tokens[9]), tokens[10]));
-            } else if (tokens[0].equalsIgnoreCase("Monkey")) {
-                monkeyList.add(new Monkey(tokens[1], tokens[2], Float.parseFloat(tokens[3]),
-                        Float.parseFloat(tokens[4]), Float.parseFloat(tokens[5]), tokens[6],
-                        Integer.parseInt(tokens[7]), Float.parseFloat(tokens[8]), tokens[9],
-                        tokens[10], tokens[11], Boolean.parseBoolean(tokens[12]), tokens[13]));
+        journal.awaitIdle();
+        long start = System.nanoTime();
+        try {
+            AnimalLoader.Result result = AnimalLoader.load(Paths.get("animals.txt"));
+            registry.replaceAll(result.getDogs(), result.getMonkeys());
+            int replayed = journal.replay();
+            metrics.record(AnimalMetrics.LOAD, System.nanoTime() - start);
+            metrics.count("load_errors", result.getErrors().size());
+            System.out.println("Animal data loaded successfully.");
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " change(s) from " + JOURNAL_FILE);
+            } else if (replayed < 0) {
+                System.out.println("Ignored " + JOURNAL_FILE + ": it was written for an earlier animals.txt");
             }
+            reportLoadErrors(result.getErrors());
+        } catch (IOException e) {
+            metrics.record(AnimalMetrics.LOAD, System.nanoTime() - start);
+            metrics.count("load_errors", 1);
+            System.out.println("Error loading data: " + e.getMessage());
+        }
+    }
+
+    // Print the lines a load skipped, capped so a bad file does not flood the console
+    private static void reportLoadErrors(List<String> errors) {
+        if (errors.isEmpty()) {
+            return;
+        }
+        System.out.println("Skipped " + errors.size() + " line(s) that could not be parsed:");
+        int shown = Math.min(errors.size(), 10);
+        for (int i = 0; i < shown; i++) {
+            System.out.println("  " + errors.get(i));
+        }
+        if (errors.size() > shown) {
+            System.out.println("  ... and " + (errors.size() - shown) + " more");
+        }
+    }
+
+
+    // Save all animal data to the compressed snapshot file in the background; the menu
+    // stays usable while it is written
+    public static void saveSnapshot() {
+        snapshots.saveAsync().whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                System.out.println("\nError saving snapshot: " + (cause instanceof UncheckedIOException
+                        ? cause.getCause().getMessage() : cause.getMessage()));
+            } else {
+                System.out.println(String.format(Locale.ROOT, "%nSnapshot of %d animal(s) saved to %s (%d KB, %.0f ms)",
+                        result.getAnimals(), SNAPSHOT_FILE, result.getBytes() / 1024, result.getNanos() / 1e6));
+            }
+        });
+        System.out.println("Saving snapshot to " + SNAPSHOT_FILE + " in the background.");
+    }
+
+    // Load animal data from the snapshot file, after any save still in progress
+    public static void loadSnapshot() {
+        snapshots.awaitIdle();
+        try {
+            BinarySnapshot.Contents contents = CompressedSnapshot.load(Paths.get(SNAPSHOT_FILE));
+            registry.replaceAll(contents.getDogs(), contents.getMonkeys());
+            System.out.println("Animal data loaded from " + SNAPSHOT_FILE);
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot: " + e.getMessage());
+        }
+    }
+
+    // Run the commands in a file (or stdin for "-") without the menu; see AnimalBatch
+    public static void runBatch(String source) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024));
+        try (BufferedReader in = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+            new AnimalBatch(registry, journal, out).run(in);
+        } catch (IOException e) {
+            out.println("Error running batch: " + e.getMessage());
+        }
+        out.flush();
+    }
+
+    // Write the dogs and monkeys as JSON arrays in the web frontend's files
+    public static void exportJson() {
+        try {
+            long dogs = AnimalJsonCodec.exportArray(Paths.get(DOGS_JSON), registry.copyDogs());
+            long monkeys = AnimalJsonCodec.exportArray(Paths.get(MONKEYS_JSON), registry.copyMonkeys());
+            System.out.println("Exported " + dogs + " dog(s) to " + DOGS_JSON + " and " + monkeys + " monkey(s) to " + MONKEYS_JSON);
+        } catch (IOException e) {
+            System.out.println("Error exporting JSON: " + e.getMessage());
+        }
+    }
+
+    // Add the animals in the web frontend's JSON files, skipping ones already registered
+    public static void importJson() {
+        importJson(DOGS_JSON, "Dog");
+        importJson(MONKEYS_JSON, "Monkey");
+    }
+
+    private static void importJson(String fileName, String type) {
+        long[] counts = new long[2]; // added, invalid species
+        try (AnimalJsonCodec.Reader reader = new AnimalJsonCodec.Reader(Files.newInputStream(Paths.get(fileName)))) {
+            long read = reader.readArray(type, animal -> {
+                if (animal instanceof Monkey && !Monkey.isValidSpecies(((Monkey) animal).getSpecies())) {
+                    counts[1]++;
+                } else if (registry.addIfAbsent(animal)) {
+                    counts[0]++;
+                }
+            });
+            System.out.println("Imported " + counts[0] + " of " + read + " animal(s) from " + fileName
+                    + (counts[1] > 0 ? " (" + counts[1] + " with an invalid species skipped)" : ""));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error importing " + fileName + " after " + counts[0] + " animal(s): " + e.getMessage());
+        }
+    }
+
+    // Print the operation metrics and write them in Prometheus text format
+    public static void showMetrics() {
+        metrics.printSummary();
+        try {
+            metrics.writePrometheus(Paths.get(METRICS_FILE));
+            System.out.println("Metrics written to " + METRICS_FILE);
+        } catch (IOException e) {
+            System.out.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    // Serve the registry over HTTP until the process is stopped; see AnimalHttpServer
+    public static void runServer(int port) {
+        try {
+            AnimalHttpServer server = new AnimalHttpServer(registry, search, availability, port);
+            server.start();
+            System.out.println("Serving the animal API on http://localhost:" + server.getPort());
+        } catch (IOException e) {
+            System.out.println("Error starting server: " + e.getMessage());
         }
-        System.out.println("Animal data loaded successfully.");
-    } catch (IOException e) {
-        System.out.println("Error loading data: " + e.getMessage());
     }
-}
 
+    // Starts the given number of ShardNode processes, loads animals.txt into them (or the
+    // sample animals when there is no file) and serves intake, /reserve and /search
+    // through the router; the shards stop when this process exits
+    public static void runRouter(int shards, int port) {
+        try {
+            ShardedAnimalStore store = ShardedAnimalStore.launch(shards);
+            Runtime.getRuntime().addShutdownHook(new Thread(store::close));
+            Path data = Paths.get("animals.txt");
+            long loaded = 0;
+            if (Files.exists(data)) {
+                loaded = store.load(data);
+            } else {
+                for (RescueAnimal animal : registry.copyDogs()) {
+                    loaded += store.intake(animal) ? 1 : 0;
+                }
+                for (RescueAnimal animal : registry.copyMonkeys()) {
+                    loaded += store.intake(animal) ? 1 : 0;
+                }
+            }
+            AnimalHttpServer server = new AnimalHttpServer(store, port);
+            server.start();
+            System.out.println("Routing the animal API over " + shards + " shard(s) with " + loaded
+                    + " animal(s) on http://localhost:" + server.getPort());
+        } catch (IOException e) {
+            System.out.println("Error starting router: " + e.getMessage());
+        }
+    }
 
     public static void main(String[] args) {
         initializeDogList();
         initializeMonkeyList();
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args.length > 1 ? args[1] : "-");
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : AnimalHttpServer.DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--router")) {
+            runRouter(Integer.parseInt(args[1]),
+                    args.length > 2 ? Integer.parseInt(args[2]) : AnimalHttpServer.DEFAULT_PORT);
+            return;
+        }
+
         Scanner sc = new Scanner(System.in);
 
         while (true) {
@@ -302,6 +659,8 @@ public class Driver {
             String input = sc.nextLine().trim();
 
             if (input.equalsIgnoreCase("q")) {
+                journal.awaitIdle();
+                snapshots.close();
                 System.out.println("Goodbye.");
                 break;
             }
@@ -310,8 +669,8 @@ public class Driver {
                 case "1": intakeNewDog(sc); break;
                 case "2": intakeNewMonkey(sc); break;
                 case "3": reserveAnimal(sc); break;
-                case "4": printAnimals("dog"); break;
-                case "5": printAnimals("monkey"); break;
+                case "4": printAnimalPages(sc, "dog"); break;
+                case "5": printAnimalPages(sc, "monkey"); break;
                 case "6": printAnimals("available"); break;
                 case "7": searchAnimals(sc); break;
                 case "8":
@@ -320,6 +679,13 @@ public class Driver {
                 case "9":
                     loadAnimalData();
                     break;
+                case "10": saveSnapshot(); break;
+                case "11": loadSnapshot(); break;
+                case "12": exportAnimals(sc); break;
+                case "13": exportJson(); break;
+                case "14": importJson(); break;
+                case "15": showMetrics(); break;
+                case "16": intakeShelter(sc); break;
                 
                 default: System.out.println("Invalid option.");
             }
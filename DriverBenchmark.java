@@ -0,0 +1,324 @@
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Benchmark harness for the Driver operations, using only the JDK so it runs the same
+// way the rest of the project is built:
+//
+//   javac *.java && java -Xms2g -Xmx8g DriverBenchmark [size ...]
+//
+// Each operation runs on a synthetic dataset of the given size (default 1000, 10000
+// and 100000 animals; pass 1000000 or 10000000 for the large runs), held in a registry
+// of its own so no journal, snapshot or other console listener is attached. After
+// warmup it reports throughput, p50/p99 latency, bytes allocated per operation and GC
+// activity. Rows with fewer than MIN_P99_SAMPLES timed operations (save, load and the
+// full listings run once per round) show no p99. "legacy" rows replay the original
+// list-scanning code so new engines can be compared against the implementation they
+// replaced.
+public class DriverBenchmark {
+
+    private static final String[] COUNTRIES = {
+        "United States", "Canada", "United Kingdom", "Mexico", "Brazil", "Germany", "France",
+        "Spain", "Italy", "Japan", "India", "Australia", "Kenya", "Egypt", "Peru", "Chile",
+        "Norway", "Sweden", "Poland", "Vietnam"
+    };
+    private static final String[] STATUSES = { "intake", "Phase I", "Phase II", "in service", "farm" };
+    private static final String[] BREEDS = { "German Shepherd", "Great Dane", "Chihuahua", "Labrador", "Beagle" };
+    private static final String[] SPECIES = { "Capuchin", "Guenon", "Macaque", "Marmoset", "Squirrel Monkey", "Tamarin" };
+
+    private static final PrintStream REPORT = System.out;
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // Fewest timed operations for which a p99 is reported
+    private static final int MIN_P99_SAMPLES = 100;
+    private static final int LIST_PAGE_SIZE = 25;
+
+    // Operation under test; the argument is the operation index within a round
+    private interface Operation {
+        void run(int i) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[] { 1_000, 10_000, 100_000 }
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        REPORT.printf(Locale.ROOT, "%-34s %10s %14s %10s %10s %12s %8s%n",
+                "benchmark", "animals", "ops/s", "p50 ns", "p99 ns", "alloc B/op", "gc ms");
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) throws Exception {
+        List<Dog> dogs = new ArrayList<>(size / 2);
+        List<Monkey> monkeys = new ArrayList<>(size - size / 2);
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                dogs.add(newDog("dog-" + i, i));
+            } else {
+                monkeys.add(newMonkey("monkey-" + i, i));
+            }
+        }
+        AnimalRegistry registry = new AnimalRegistry();
+        registry.replaceAll(dogs, monkeys);
+        int ops = Math.min(size, 100_000);
+
+        // Intake: duplicate check followed by insert, into a registry of the given size
+        String[] newNames = new String[ops];
+        for (int i = 0; i < ops; i++) {
+            newNames[i] = "new-dog-" + i;
+        }
+        measure("intake (registry)", size, ops, () -> registry.replaceAll(dogs, monkeys), i -> {
+            if (registry.findDog(newNames[i]) == null) {
+                registry.addDog(newDog(newNames[i], i));
+            }
+        });
+        registry.replaceAll(dogs, monkeys);
+
+        // The same intakes through BulkIntake, 1000 animals per operation
+        int bulkSize = Math.min(ops, 1_000);
+        List<List<Dog>> bulkBatches = new ArrayList<>();
+        for (int from = 0; from + bulkSize <= ops; from += bulkSize) {
+            List<Dog> batch = new ArrayList<>(bulkSize);
+            for (int i = from; i < from + bulkSize; i++) {
+                batch.add(newDog(newNames[i], i));
+            }
+            bulkBatches.add(batch);
+        }
+        measure("intake (bulk x" + bulkSize + ")", size, bulkBatches.size(), () -> registry.replaceAll(dogs, monkeys),
+                i -> BulkIntake.intake(registry, bulkBatches.get(i)));
+        registry.replaceAll(dogs, monkeys);
+
+        List<Dog> legacyDogs = new ArrayList<>(dogs);
+        int legacyOps = Math.min(ops, 2_000);
+        measure("intake (legacy list scan)", size, legacyOps,
+                () -> legacyDogs.subList(dogs.size(), legacyDogs.size()).clear(), i -> {
+            for (Dog dog : legacyDogs) {
+                if (dog.getName().equalsIgnoreCase(newNames[i])) {
+                    return;
+                }
+            }
+            legacyDogs.add(newDog(newNames[i], i));
+        });
+
+        // Reserve and release so each round sees the same number of available animals
+        measure("reserveAnimal (ready-queue)", size, ops, i -> {
+            RescueAnimal animal = registry.reserve(i % 2 == 0 ? "dog" : "monkey", COUNTRIES[i % COUNTRIES.length]);
+            if (animal != null) {
+                animal.setReserved(false);
+            }
+        });
+        // The legacy scan reserves on unregistered copies, so the registry's listeners do
+        // not see it. Reservations stay in place for the round, as they do in real use,
+        // so each scan walks past the dogs reserved before it; every round starts with
+        // all of them released again.
+        List<Dog> scanDogs = new ArrayList<>(dogs.size());
+        for (Dog dog : dogs) {
+            scanDogs.add((Dog) SnapshotCapture.copyOf(dog));
+        }
+        measure("reserveAnimal (legacy list scan)", size, legacyOps, () -> {
+            for (Dog dog : scanDogs) {
+                dog.setReserved(false);
+            }
+        }, i -> {
+            String country = COUNTRIES[(i * 7 + 3) % COUNTRIES.length];
+            for (Dog dog : scanDogs) {
+                if (!dog.getReserved() && dog.getInServiceCountry().equalsIgnoreCase(country)) {
+                    dog.setReserved(true);
+                    return;
+                }
+            }
+        });
+
+        measure("searchAnimals name", size, ops, i -> registry.findByName("dog-" + (i * 2 % size)));
+        measure("searchAnimals type", size, Math.min(ops, 100), i -> registry.findByType(i % 2 == 0 ? "dog" : "monkey"));
+        measure("searchAnimals country", size, Math.min(ops, 1_000),
+                i -> registry.findByAcquisitionCountry(COUNTRIES[i % COUNTRIES.length]));
+        measure("searchAnimals name (legacy)", size, legacyOps, i -> {
+            String name = "dog-" + (i * 2 % size);
+            for (Dog dog : dogs) {
+                if (dog.getName().equalsIgnoreCase(name)) {
+                    break;
+                }
+            }
+        });
+
+        // Full listings as options 4 and 6 render them, into a discarded stream so only
+        // formatting and writing are measured
+        AvailabilityView listed = new AvailabilityView(registry);
+        try {
+            measure("printAnimals dog", size, 1, i -> {
+                try (ReportRenderer renderer = discardingRenderer()) {
+                    renderer.dogs(registry.getDogs());
+                }
+            });
+            measure("printAnimals available", size, 1, i -> {
+                try (ReportRenderer renderer = discardingRenderer()) {
+                    renderer.available(listed.available(AvailabilityView.DOG), listed.available(AvailabilityView.MONKEY));
+                }
+            });
+        } finally {
+            registry.removeRegistryListener(listed);
+        }
+        // Paged listing: one page at a time through the whole list, against printing it all
+        try (AnimalPager<Dog> pager = AnimalPager.dogs(registry)) {
+            measurePages("dog page", size, Math.min(ops, 1_000), pager);
+        }
+
+        // Dashboard reads: per-country availability from the incremental view against a
+        // column scan and the original list scan
+        AvailabilityView view = new AvailabilityView(registry);
+        ColumnarAnimalStore columns = new ColumnarAnimalStore(registry);
+        try {
+            measure("available by country (view)", size, Math.min(ops, 1_000),
+                    i -> view.availableCount(AvailabilityView.DOG, COUNTRIES[i % COUNTRIES.length]));
+            measure("available by country (columns)", size, Math.min(ops, 100),
+                    i -> columns.availableCountByCountry(ColumnarAnimalStore.DOG));
+            measure("available by country (legacy)", size, Math.min(ops, 100), i -> {
+                String country = COUNTRIES[i % COUNTRIES.length];
+                int count = 0;
+                for (Dog dog : dogs) {
+                    if (!dog.getReserved() && dog.getTrainingStatus().equalsIgnoreCase("in service")
+                            && dog.getInServiceCountry().equalsIgnoreCase(country)) {
+                        count++;
+                    }
+                }
+            });
+            measure("reserve+release with view", size, ops, i -> {
+                RescueAnimal animal = registry.reserve(i % 2 == 0 ? "dog" : "monkey", COUNTRIES[i % COUNTRIES.length]);
+                if (animal != null) {
+                    animal.setReserved(false);
+                }
+            });
+        } finally {
+            registry.removeRegistryListener(view);
+            registry.removeRegistryListener(columns);
+        }
+
+        Path csv = Files.createTempFile("animals", ".txt");
+        Path snapshot = Files.createTempFile("animals", ".snapshot");
+        Path compressed = Files.createTempFile("animals", ".snapshot");
+        try {
+            measure("saveAnimalData (csv)", size, 1, i -> AnimalLoader.save(csv, dogs, monkeys));
+            measure("loadAnimalData (csv)", size, 1, i -> AnimalLoader.load(csv));
+            measure("save binary snapshot", size, 1, i -> BinarySnapshot.save(snapshot, dogs, monkeys));
+            measure("load binary snapshot", size, 1, i -> BinarySnapshot.load(snapshot));
+            measure("save compressed snapshot", size, 1, i -> CompressedSnapshot.save(compressed, dogs, monkeys));
+            measure("load compressed snapshot", size, 1, i -> CompressedSnapshot.load(compressed));
+            try (MappedAnimalFile file = MappedAnimalFile.open(csv)) {
+                measurePages("dog page from file", size, Math.min(ops, 1_000), AnimalPager.dogs(file));
+            }
+            // Background save: end to end, and the part the caller waits for
+            SnapshotSaver saver = new SnapshotSaver(registry, compressed);
+            measure("snapshot saveAsync (to disk)", size, 1, i -> saver.saveAsync().join());
+            measure("snapshot saveAsync (caller)", size, 1, () -> saver.awaitIdle(), i -> saver.saveAsync());
+            saver.close();
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(compressed);
+        }
+    }
+
+    // One row per order, each op fetching the page after the previous one. The first
+    // page of each order is fetched beforehand so its one-time sort is not timed.
+    private static void measurePages(String name, int size, int ops, AnimalPager<?> pager) throws Exception {
+        for (AnimalPager.Order order : AnimalPager.Order.values()) {
+            String[] token = { pager.page(order, LIST_PAGE_SIZE, null).getNextToken() };
+            String label = order == AnimalPager.Order.ACQUISITION_DATE ? "date" : order.name().toLowerCase(Locale.ROOT);
+            measure(name + " (" + label + ")", size, ops,
+                    i -> token[0] = pager.page(order, LIST_PAGE_SIZE, token[0]).getNextToken());
+        }
+    }
+
+    private static void measure(String name, int size, int ops, Operation operation) throws Exception {
+        measure(name, size, ops, () -> { }, operation);
+    }
+
+    // Runs warmup rounds, then measured rounds, and prints one result line.
+    // setup runs before every round and is not timed.
+    private static void measure(String name, int size, int ops, Runnable setup, Operation operation) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            setup.run();
+            for (int i = 0; i < ops; i++) {
+                operation.run(i);
+            }
+        }
+
+        long[] latencies = new long[ops * MEASURED_ROUNDS];
+        long elapsed = 0;
+        long allocated = 0;
+        long gc = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            setup.run();
+            long gcBefore = gcMillis();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                long opStart = System.nanoTime();
+                operation.run(i);
+                latencies[round * ops + i] = System.nanoTime() - opStart;
+            }
+            elapsed += System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            gc += gcMillis() - gcBefore;
+        }
+
+        Arrays.sort(latencies);
+        long total = latencies.length;
+        String p99 = total < MIN_P99_SAMPLES ? "-"
+                : Long.toString(latencies[(int) Math.min(total - 1, total * 99 / 100)]);
+        REPORT.printf(Locale.ROOT, "%-34s %10d %14.1f %10d %10s %12d %8d%n",
+                name, size, total * 1e9 / elapsed, latencies[(int) (total * 50 / 100)], p99,
+                allocatedBytes() < 0 ? -1 : allocated / total, gc);
+    }
+
+    private static ReportRenderer discardingRenderer() {
+        return new ReportRenderer(new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8),
+                ReportRenderer.Format.CONSOLE, ReportRenderer.DEFAULT_FLUSH_ROWS);
+    }
+
+    // Bytes allocated by this thread, or a negative value if the JVM cannot report it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static Dog newDog(String name, int i) {
+        return new Dog(name, BREEDS[i % BREEDS.length], i % 3 == 0 ? "female" : "male", 1 + i % 12,
+                10f + i % 40, "01-01-2020", COUNTRIES[(i / 7) % COUNTRIES.length], STATUSES[i % STATUSES.length],
+                false, COUNTRIES[i % COUNTRIES.length]);
+    }
+
+    private static Monkey newMonkey(String name, int i) {
+        return new Monkey(name, SPECIES[i % SPECIES.length], 5f + i % 5, 9f + i % 4, 18f + i % 6,
+                i % 3 == 0 ? "female" : "male", 1 + i % 20, 12f + i % 10, "01-01-2020",
+                COUNTRIES[(i / 7) % COUNTRIES.length], STATUSES[i % STATUSES.length], false,
+                COUNTRIES[i % COUNTRIES.length]);
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Shared dictionary for the low-cardinality String fields of the animals: gender, type,
+// training status, acquisition and in-service country, breed and species. Every animal
+// stores the single canonical instance of a value instead of its own copy, and each
+// distinct value has a small int id that column stores can use in place of the String.
+//
+// Id 0 stands for null. Once MAX_ENTRIES values have been seen new values are no longer
+// added, so an unexpected high-cardinality input cannot grow the dictionary without bound.
+public final class FieldDictionary {
+
+    public static final int MAX_ENTRIES = 1 << 16;
+
+    // Id returned when a value could not be added because the dictionary is full
+    public static final int NO_ID = -1;
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] values = new String[256];
+    private static volatile int size = 1; // slot 0 is null
+
+    private FieldDictionary() {}
+
+    // Canonical instance of the value (the value itself if the dictionary is full)
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int id = id(value);
+        return id == NO_ID ? value : values[id];
+    }
+
+    // Id of the value, adding it if needed; 0 for null, NO_ID if the dictionary is full
+    public static int id(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    // Id of the value if it is already in the dictionary, without adding it
+    public static int lookup(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : NO_ID;
+    }
+
+    // Value for an id
+    public static String value(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown dictionary id " + id);
+        }
+        return values[id];
+    }
+
+    // Number of ids in use, including the null id
+    public static int size() {
+        return size;
+    }
+
+    private static synchronized int add(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (size >= MAX_ENTRIES) {
+            return NO_ID;
+        }
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        int id = size;
+        current[id] = value;
+        values = current;
+        size = id + 1;
+        ids.put(value, id);
+        return id;
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Read-only, memory-mapped view of an animals.txt snapshot. Opening the file only
+// maps it; line boundaries are found on demand, as far into the file as the highest
+// record asked for, so reading the first records of a large file touches only the
+// start of it. Fields are decoded straight from the mapped bytes and a String is only
+// created when a caller asks for that field.
+//
+// Files larger than 2 GB are mapped as several segments that each end on a line break,
+// so a record never spans two segments: each record keeps its segment and offsets
+// within it, and field reads work on that one buffer with no per-byte lookups and no
+// allocation. Safe for concurrent readers.
+public class MappedAnimalFile implements Closeable {
+
+    // Largest region a single MappedByteBuffer can cover
+    private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+    // Bytes copied out of the mapping at a time while looking for line breaks
+    private static final int SCAN_CHUNK = 64 * 1024;
+
+    // Returned by fieldRange when the record has no such column
+    private static final long NO_FIELD = -1;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    // Usable length of each segment (up to and including its last line break)
+    private final List<Integer> segmentLimits = new ArrayList<>();
+
+    // Segment and in-segment start and end offsets of every non-empty line found so
+    // far, excluding the line break. lineCount is published after the arrays are filled.
+    private int[] lineSegments = new int[1024];
+    private int[] lineStarts = new int[1024];
+    private int[] lineEnds = new int[1024];
+    private volatile int lineCount;
+
+    // Where the line scan resumes
+    private int scanSegment;
+    private int scanPosition;
+    private int scanLineStart;
+    private boolean fullyIndexed;
+    private final byte[] scanBuffer = new byte[SCAN_CHUNK];
+
+    private MappedAnimalFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Maps the file; lines are indexed lazily as records are read
+    public static MappedAnimalFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedAnimalFile file = new MappedAnimalFile(channel);
+        try {
+            file.mapSegments();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return file;
+    }
+
+    private void mapSegments() throws IOException {
+        long size = channel.size();
+        long start = 0;
+        while (start < size) {
+            long length = Math.min(MAX_SEGMENT, size - start);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+            // End the segment after its last complete line so no record spans two segments
+            int end = (int) length;
+            if (start + length < size) {
+                while (end > 0 && buffer.get(end - 1) != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    throw new IOException("Line longer than " + MAX_SEGMENT + " bytes at offset " + start);
+                }
+            }
+            segments.add(buffer);
+            segmentLimits.add(end);
+            start += end;
+        }
+        fullyIndexed = segments.isEmpty();
+    }
+
+    // Number of records (non-empty lines) in the file; indexes the whole file
+    public int size() {
+        indexUntil(Integer.MAX_VALUE);
+        return lineCount;
+    }
+
+    // True if the file has the given record; indexes only as far as that record
+    public boolean hasRecord(int record) {
+        if (record < 0) {
+            return false;
+        }
+        if (record >= lineCount) {
+            indexUntil(record + 1);
+        }
+        return record < lineCount;
+    }
+
+    // True if the record is a Dog line
+    public boolean isDog(int record) {
+        return startsWithIgnoreCase(record, "Dog,");
+    }
+
+    // True if the record is a Monkey line
+    public boolean isMonkey(int record) {
+        return startsWithIgnoreCase(record, "Monkey,");
+    }
+
+    // Name of the animal, the second column for both record types
+    public String name(int record) {
+        return field(record, 1);
+    }
+
+    // Reserved flag, read without creating a String
+    public boolean reserved(int record) {
+        int column = isMonkey(record) ? 12 : 9;
+        long range = fieldRange(record, column);
+        return range != NO_FIELD && regionEqualsIgnoreCase(segments.get(lineSegments[record]),
+                rangeStart(range), rangeEnd(range), "true");
+    }
+
+    // Decodes one column of a record, or returns null if the record has fewer columns
+    public String field(int record, int column) {
+        long range = fieldRange(record, column);
+        return range == NO_FIELD ? null : decode(segments.get(lineSegments[record]), rangeStart(range), rangeEnd(range));
+    }
+
+    // Decodes the whole record line
+    public String line(int record) {
+        checkRecord(record);
+        return decode(segments.get(lineSegments[record]), lineStarts[record], lineEnds[record]);
+    }
+
+    // Builds a full Dog or Monkey for the record
+    public RescueAnimal materialize(int record) {
+        return AnimalLoader.parseLine(line(record));
+    }
+
+    // Closes the channel; the mappings themselves are released when garbage collected
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // In-segment start and end of a column packed into one long, or NO_FIELD
+    private long fieldRange(int record, int column) {
+        checkRecord(record);
+        MappedByteBuffer buffer = segments.get(lineSegments[record]);
+        int start = lineStarts[record];
+        int end = lineEnds[record];
+        int current = 0;
+        int fieldStart = start;
+        for (int pos = start; pos < end; pos++) {
+            if (buffer.get(pos) == ',') {
+                if (current == column) {
+                    return range(fieldStart, pos);
+                }
+                current++;
+                fieldStart = pos + 1;
+            }
+        }
+        return current == column ? range(fieldStart, end) : NO_FIELD;
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private static int rangeStart(long range) {
+        return (int) (range >>> 32);
+    }
+
+    private static int rangeEnd(long range) {
+        return (int) range;
+    }
+
+    private boolean startsWithIgnoreCase(int record, String prefix) {
+        checkRecord(record);
+        int start = lineStarts[record];
+        return lineEnds[record] - start >= prefix.length()
+                && regionEqualsIgnoreCase(segments.get(lineSegments[record]), start, start + prefix.length(), prefix);
+    }
+
+    private static boolean regionEqualsIgnoreCase(MappedByteBuffer buffer, int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase((char) buffer.get(start + i)) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Scans for line breaks, a chunk at a time, until at least the given number of
+    // records is indexed or the file ends
+    private synchronized void indexUntil(int records) {
+        while (lineCount < records && !fullyIndexed) {
+            MappedByteBuffer buffer = segments.get(scanSegment);
+            int limit = segmentLimits.get(scanSegment);
+            int length = Math.min(SCAN_CHUNK, limit - scanPosition);
+            buffer.get(scanPosition, scanBuffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (scanBuffer[i] == '\n') {
+                    addLine(buffer, scanLineStart, scanPosition + i);
+                    scanLineStart = scanPosition + i + 1;
+                }
+            }
+            scanPosition += length;
+            if (scanPosition == limit) {
+                // Last line of the file may lack a line break
+                addLine(buffer, scanLineStart, limit);
+                scanSegment++;
+                scanPosition = 0;
+                scanLineStart = 0;
+                fullyIndexed = scanSegment == segments.size();
+            }
+        }
+    }
+
+    // Records a non-empty line, dropping a trailing carriage return
+    private void addLine(MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end <= start) {
+            return;
+        }
+        int count = lineCount;
+        if (count == lineStarts.length) {
+            lineSegments = Arrays.copyOf(lineSegments, count * 2);
+            lineStarts = Arrays.copyOf(lineStarts, count * 2);
+            lineEnds = Arrays.copyOf(lineEnds, count * 2);
+        }
+        lineSegments[count] = scanSegment;
+        lineStarts[count] = start;
+        lineEnds[count] = end;
+        lineCount = count + 1;
+    }
+
+    private void checkRecord(int record) {
+        if (!hasRecord(record)) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + size());
+        }
+    }
+}
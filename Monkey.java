@@ -29,7 +29,7 @@ public class Monkey extends RescueAnimal {
         setReserved(reserved);
         setInServiceCountry(inServiceCountry);
 
-        this.species = species;
+        this.species = FieldDictionary.intern(species);
         this.tailLength = tailLength;
         this.height = height;
         this.bodyLength = bodyLength;
@@ -41,7 +41,9 @@ public class Monkey extends RescueAnimal {
     }
 
     public void setTailLength(float tailLength) {
+        float old = this.tailLength;
         this.tailLength = tailLength;
+        fireChange("tailLength", old, tailLength);
     }
 
     public float getHeight() {
@@ -49,7 +51,9 @@ public class Monkey extends RescueAnimal {
     }
 
     public void setHeight(float height) {
+        float old = this.height;
         this.height = height;
+        fireChange("height", old, height);
     }
 
     public float getBodyLength() {
@@ -57,15 +61,26 @@ public class Monkey extends RescueAnimal {
     }
 
     public void setBodyLength(float bodyLength) {
+        float old = this.bodyLength;
         this.bodyLength = bodyLength;
+        fireChange("bodyLength", old, bodyLength);
     }
 
     public String getSpecies() {
         return species;
     }
 
+    // Monkey species the system accepts; false for null
+    public static boolean isValidSpecies(String species) {
+        return species != null && (species.equalsIgnoreCase("Capuchin") || species.equalsIgnoreCase("Guenon")
+                || species.equalsIgnoreCase("Macaque") || species.equalsIgnoreCase("Marmoset")
+                || species.equalsIgnoreCase("Squirrel Monkey") || species.equalsIgnoreCase("Tamarin"));
+    }
+
     public void setSpecies(String species) {
-        this.species = species;
+        String old = this.species;
+        this.species = FieldDictionary.intern(species);
+        fireChange("species", old, species);
     }
 
     public String getAcquisitionCountry() {
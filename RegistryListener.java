@@ -0,0 +1,19 @@
+import java.util.List;
+
+// Listener for registry-wide events: an animal being added, a field changing on any
+// registered animal, and the whole collection being replaced (for example by a load).
+public interface RegistryListener extends AnimalListener {
+
+    default void animalAdded(RescueAnimal animal) {}
+
+    // Several animals added at once (AnimalRegistry.addAllAbsent), after all of them are
+    // in the registry. The default delivers one animalAdded per animal; a listener that
+    // overrides it under its own lock shows its readers none or all of the batch.
+    default void animalsAdded(List<? extends RescueAnimal> animals) {
+        for (RescueAnimal animal : animals) {
+            animalAdded(animal);
+        }
+    }
+
+    default void registryReplaced() {}
+}
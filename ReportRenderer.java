@@ -0,0 +1,235 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Renders the dog, monkey and available-animal listings. Every row is built in one
+// reusable StringBuilder and written to a BufferedWriter, which is flushed once every
+// flushEveryRows rows instead of once per line, so large listings stream out in big
+// chunks without the whole report being held in memory.
+//
+// CONSOLE produces the same lines the menu has always printed; CSV and TSV write a
+// header row followed by one row per animal for export.
+public class ReportRenderer implements Closeable {
+
+    public enum Format { CONSOLE, CSV, TSV }
+
+    public static final int DEFAULT_FLUSH_ROWS = 1000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final Format format;
+    private final int flushEveryRows;
+    private final boolean closeWriter;
+    private final StringBuilder row = new StringBuilder(256);
+    private int pendingRows;
+
+    public ReportRenderer(Writer out, Format format, int flushEveryRows) {
+        this(out, format, flushEveryRows, true);
+    }
+
+    private ReportRenderer(Writer out, Format format, int flushEveryRows, boolean closeWriter) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+        this.format = format;
+        this.flushEveryRows = Math.max(1, flushEveryRows);
+        this.closeWriter = closeWriter;
+    }
+
+    // Renderer writing to System.out; close() flushes but leaves System.out open
+    public static ReportRenderer toStdout(Format format) {
+        Writer writer = new OutputStreamWriter(System.out, Charset.defaultCharset());
+        return new ReportRenderer(new BufferedWriter(writer, BUFFER_SIZE), format, DEFAULT_FLUSH_ROWS, false);
+    }
+
+    // Renderer writing to a file, replacing it if it exists
+    public static ReportRenderer toFile(Path path, Format format) throws IOException {
+        return new ReportRenderer(Files.newBufferedWriter(path, StandardCharsets.UTF_8), format, DEFAULT_FLUSH_ROWS);
+    }
+
+    // All dogs with their full attributes
+    public void dogs(Iterable<Dog> dogs) throws IOException {
+        if (format == Format.CONSOLE) {
+            line("All Dogs:");
+        } else {
+            header("type", "name", "breed", "gender", "age", "weight", "trainingStatus", "reserved",
+                    "acquisitionCountry", "inServiceCountry");
+        }
+        dogRows(dogs);
+    }
+
+    // Dog rows without a heading, e.g. for one page of a longer listing
+    public void dogRows(Iterable<Dog> dogs) throws IOException {
+        for (Dog dog : dogs) {
+            row.setLength(0);
+            if (format == Format.CONSOLE) {
+                row.append("Dog: ").append(dog.getName())
+                        .append(" | Breed: ").append(dog.getBreed())
+                        .append(" | Gender: ").append(dog.getGender())
+                        .append(" | Age: ").append(dog.getAge())
+                        .append(" | Weight: ").append(dog.getWeight())
+                        .append(" | Training: ").append(dog.getTrainingStatus())
+                        .append(" | Reserved: ").append(dog.getReserved())
+                        .append(" | Country: ").append(dog.getAcquisitionCountry())
+                        .append(" | In Service: ").append(dog.getInServiceCountry());
+            } else {
+                cell("Dog", true);
+                cell(dog.getName(), false);
+                cell(dog.getBreed(), false);
+                cell(dog.getGender(), false);
+                cell(String.valueOf(dog.getAge()), false);
+                cell(String.valueOf(dog.getWeight()), false);
+                cell(dog.getTrainingStatus(), false);
+                cell(String.valueOf(dog.getReserved()), false);
+                cell(dog.getAcquisitionCountry(), false);
+                cell(dog.getInServiceCountry(), false);
+            }
+            endRow();
+        }
+        out.flush();
+    }
+
+    // All monkeys with their full attributes
+    public void monkeys(Iterable<Monkey> monkeys) throws IOException {
+        if (format == Format.CONSOLE) {
+            line("All Monkeys:");
+        } else {
+            header("type", "name", "species", "gender", "age", "weight", "tailLength", "height", "bodyLength",
+                    "trainingStatus", "reserved", "acquisitionCountry", "inServiceCountry");
+        }
+        monkeyRows(monkeys);
+    }
+
+    // Monkey rows without a heading, e.g. for one page of a longer listing
+    public void monkeyRows(Iterable<Monkey> monkeys) throws IOException {
+        for (Monkey monkey : monkeys) {
+            row.setLength(0);
+            if (format == Format.CONSOLE) {
+                row.append("Monkey: ").append(monkey.getName())
+                        .append(" | Species: ").append(monkey.getSpecies())
+                        .append(" | Gender: ").append(monkey.getGender())
+                        .append(" | Age: ").append(monkey.getAge())
+                        .append(" | Weight: ").append(monkey.getWeight())
+                        .append(" | Tail Length: ").append(monkey.getTailLength())
+                        .append(" | Height: ").append(monkey.getHeight())
+                        .append(" | Body Length: ").append(monkey.getBodyLength())
+                        .append(" | Training: ").append(monkey.getTrainingStatus())
+                        .append(" | Reserved: ").append(monkey.getReserved())
+                        .append(" | Country: ").append(monkey.getAcquisitionCountry())
+                        .append(" | In Service: ").append(monkey.getInServiceCountry());
+            } else {
+                cell("Monkey", true);
+                cell(monkey.getName(), false);
+                cell(monkey.getSpecies(), false);
+                cell(monkey.getGender(), false);
+                cell(String.valueOf(monkey.getAge()), false);
+                cell(String.valueOf(monkey.getWeight()), false);
+                cell(String.valueOf(monkey.getTailLength()), false);
+                cell(String.valueOf(monkey.getHeight()), false);
+                cell(String.valueOf(monkey.getBodyLength()), false);
+                cell(monkey.getTrainingStatus(), false);
+                cell(String.valueOf(monkey.getReserved()), false);
+                cell(monkey.getAcquisitionCountry(), false);
+                cell(monkey.getInServiceCountry(), false);
+            }
+            endRow();
+        }
+        out.flush();
+    }
+
+    // Animals that are in service and not reserved
+    public void available(Iterable<? extends RescueAnimal> dogs, Iterable<? extends RescueAnimal> monkeys) throws IOException {
+        if (format == Format.CONSOLE) {
+            line("Available Dogs:");
+            availableRows("Dog", dogs);
+            line("Available Monkeys:");
+            availableRows("Monkey", monkeys);
+        } else {
+            header("type", "name", "inServiceCountry");
+            availableRows("Dog", dogs);
+            availableRows("Monkey", monkeys);
+        }
+        out.flush();
+    }
+
+    private void availableRows(String label, Iterable<? extends RescueAnimal> animals) throws IOException {
+        for (RescueAnimal animal : animals) {
+            row.setLength(0);
+            if (format == Format.CONSOLE) {
+                row.append(label).append(": ").append(animal.getName())
+                        .append(" | In Service Country: ").append(animal.getInServiceCountry());
+            } else {
+                cell(label, true);
+                cell(animal.getName(), false);
+                cell(animal.getInServiceCountry(), false);
+            }
+            endRow();
+        }
+    }
+
+    // Flushes buffered rows and closes the writer (except for stdout)
+    @Override
+    public void close() throws IOException {
+        if (closeWriter) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+
+    private void line(String text) throws IOException {
+        row.setLength(0);
+        row.append(text);
+        endRow();
+    }
+
+    private void header(String... names) throws IOException {
+        row.setLength(0);
+        for (int i = 0; i < names.length; i++) {
+            cell(names[i], i == 0);
+        }
+        endRow();
+    }
+
+    // Appends one delimited cell, quoting CSV values and flattening TSV separators
+    private void cell(String value, boolean first) {
+        if (!first) {
+            row.append(format == Format.TSV ? '\t' : ',');
+        }
+        if (value == null) {
+            return;
+        }
+        if (format == Format.TSV) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                row.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+            }
+        } else if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+            row.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
+            }
+            row.append('"');
+        } else {
+            row.append(value);
+        }
+    }
+
+    private void endRow() throws IOException {
+        row.append(System.lineSeparator());
+        out.append(row);
+        if (++pendingRows >= flushEveryRows) {
+            out.flush();
+            pendingRows = 0;
+        }
+    }
+}
@@ -1,4 +1,9 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
 public class RescueAnimal {
+    private String id;  // web frontend id such as "D001", or null until an export assigns one
     private String name;
     private String type;
     private String gender;
@@ -7,8 +12,23 @@ public class RescueAnimal {
     private String acquisitionDate;  // Changed from SimpleDateFormat to String
     private String acquisitionCountry;
     private String trainingStatus;
-    private boolean reserved;
+    private volatile boolean reserved;  // claimed atomically through RESERVED
     private String inServiceCountry;
+    // type, gender, the countries and training status are interned through FieldDictionary
+
+    // Listeners notified when a setter changes a field (shared empty array until one is added)
+    private static final AnimalListener[] NO_LISTENERS = new AnimalListener[0];
+    private volatile AnimalListener[] listeners = NO_LISTENERS;
+
+    // Atomic access to the reserved flag so concurrent reservers cannot both claim an animal
+    private static final VarHandle RESERVED;
+    static {
+        try {
+            RESERVED = MethodHandles.lookup().findVarHandle(RescueAnimal.class, "reserved", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     // Default constructor
     public RescueAnimal() {}
@@ -18,35 +38,98 @@ public class RescueAnimal {
                         String acquisitionDate, String acquisitionCountry, String trainingStatus,
                         boolean reserved, String inServiceCountry) {
         this.name = name;
-        this.type = type;
-        this.gender = gender;
+        this.type = FieldDictionary.intern(type);
+        this.gender = FieldDictionary.intern(gender);
         this.age = age;
         this.weight = weight;
         this.acquisitionDate = acquisitionDate;
-        this.acquisitionCountry = acquisitionCountry;
-        this.trainingStatus = trainingStatus;
+        this.acquisitionCountry = FieldDictionary.intern(acquisitionCountry);
+        this.trainingStatus = FieldDictionary.intern(trainingStatus);
         this.reserved = reserved;
-        this.inServiceCountry = inServiceCountry;
+        this.inServiceCountry = FieldDictionary.intern(inServiceCountry);
+    }
+
+    // Registers a listener for field changes made through the setters
+    public synchronized void addListener(AnimalListener listener) {
+        AnimalListener[] next = new AnimalListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, next, 0, listeners.length);
+        next[listeners.length] = listener;
+        listeners = next;
+    }
+
+    // Removes a previously registered listener
+    public synchronized void removeListener(AnimalListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                AnimalListener[] next = new AnimalListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, next, 0, i);
+                System.arraycopy(listeners, i + 1, next, i, listeners.length - i - 1);
+                listeners = next;
+                return;
+            }
+        }
+    }
+
+    // Notifies listeners when a field actually changed value
+    protected void fireChange(String field, Object oldValue, Object newValue) {
+        AnimalListener[] current = listeners;
+        if (current.length == 0 || Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        for (AnimalListener listener : current) {
+            listener.animalChanged(this, field, oldValue, newValue);
+        }
     }
 
     // Getters and setters
+    public String getId() { return id; }
+    public void setId(String id) {
+        String old = this.id;
+        this.id = id;
+        fireChange("id", old, id);
+    }
+
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) {
+        String old = this.name;
+        this.name = name;
+        fireChange("name", old, name);
+    }
 
     public String getType() { return type; }
-    public void setType(String type) { this.type = type; }
+    public void setType(String type) {
+        String old = this.type;
+        this.type = FieldDictionary.intern(type);
+        fireChange("type", old, type);
+    }
 
     public String getGender() { return gender; }
-    public void setGender(String gender) { this.gender = gender; }
+    public void setGender(String gender) {
+        String old = this.gender;
+        this.gender = FieldDictionary.intern(gender);
+        fireChange("gender", old, gender);
+    }
 
     public int getAge() { return age; }
-    public void setAge(int age) { this.age = age; }
+    public void setAge(int age) {
+        int old = this.age;
+        this.age = age;
+        fireChange("age", old, age);
+    }
 
     public float getWeight() { return weight; }
-    public void setWeight(float weight) { this.weight = weight; }
+    public void setWeight(float weight) {
+        float old = this.weight;
+        this.weight = weight;
+        fireChange("weight", old, weight);
+    }
 
     public String getAcquisitionDate() { return acquisitionDate; }
-    public void setAcquisitionDate(String acquisitionDate) { this.acquisitionDate = acquisitionDate; }
+    public void setAcquisitionDate(String acquisitionDate) {
+        String old = this.acquisitionDate;
+        this.acquisitionDate = acquisitionDate;
+        fireChange("acquisitionDate", old, acquisitionDate);
+    }
 
 // Getter for acquisitionSource
 public String getAcquisitionCountry() {
@@ -55,15 +138,37 @@ public String getAcquisitionCountry() {
 
 // Setter for acquisitionSource
 public void setAcquisitionSource(String acquisitionSource) {
-    this.acquisitionCountry = acquisitionSource;
+    String old = this.acquisitionCountry;
+    this.acquisitionCountry = FieldDictionary.intern(acquisitionSource);
+    fireChange("acquisitionCountry", old, acquisitionSource);
 }
 
     public String getTrainingStatus() { return trainingStatus; }
-    public void setTrainingStatus(String trainingStatus) { this.trainingStatus = trainingStatus; }
+    public void setTrainingStatus(String trainingStatus) {
+        String old = this.trainingStatus;
+        this.trainingStatus = FieldDictionary.intern(trainingStatus);
+        fireChange("trainingStatus", old, trainingStatus);
+    }
 
     public boolean getReserved() { return reserved; }
-    public void setReserved(boolean reserved) { this.reserved = reserved; }
+    public void setReserved(boolean reserved) {
+        boolean old = (boolean) RESERVED.getAndSet(this, reserved);
+        fireChange("reserved", old, reserved);
+    }
+
+    // Claims the animal if it is not reserved yet; only one caller can win the claim
+    public boolean tryReserve() {
+        if (RESERVED.compareAndSet(this, false, true)) {
+            fireChange("reserved", false, true);
+            return true;
+        }
+        return false;
+    }
 
     public String getInServiceCountry() { return inServiceCountry; }
-    public void setInServiceCountry(String inServiceCountry) { this.inServiceCountry = inServiceCountry; }
+    public void setInServiceCountry(String inServiceCountry) {
+        String old = this.inServiceCountry;
+        this.inServiceCountry = FieldDictionary.intern(inServiceCountry);
+        fireChange("inServiceCountry", old, inServiceCountry);
+    }
 }
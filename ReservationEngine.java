@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Keeps a ready-queue of unreserved animals per (type, in-service country) so a
+// reservation pops the next candidate instead of scanning the whole list.
+// Releasing an animal with setReserved(false) puts it back on its queue.
+//
+// Each queue holds at most one entry per animal: it keeps the set of animals it has an
+// entry for, and a release or move only adds an entry to a queue that has none for the
+// animal. Queues are cleaned lazily: an entry whose animal has since been reserved or
+// moved to another country or type is dropped when it reaches the head of the queue.
+// An animal that moves away and back finds its old entry still queued and valid again,
+// so toggling an animal never grows a queue.
+//
+// The engine is safe for many concurrent reservers. Finding and claiming an animal
+// takes no lock: the queues are lock-free and the claim itself is a compare-and-set on
+// the animal (RescueAnimal.tryReserve), so an animal raced for by several threads is
+// booked only once. The claim then fires a "reserved" change to the animal's listeners
+// on the reserving thread, and registry listeners such as AvailabilityView and
+// AnimalJournal take their own locks to record it.
+public class ReservationEngine implements AnimalListener {
+
+    private final ConcurrentHashMap<String, ReadyQueue> readyQueues = new ConcurrentHashMap<>();
+
+    // Entries in arrival order, and the animals that have one
+    private static class ReadyQueue {
+        final Queue<RescueAnimal> entries = new ConcurrentLinkedQueue<>();
+        final Set<RescueAnimal> members = ConcurrentHashMap.newKeySet();
+    }
+
+    // Queue key for a type and in-service country
+    private static String queueKey(String type, String inServiceCountry) {
+        return AnimalRegistry.key(type) + "|" + AnimalRegistry.key(inServiceCountry);
+    }
+
+    private static String queueKey(RescueAnimal animal) {
+        return queueKey(AnimalRegistry.typeKey(animal), animal.getInServiceCountry());
+    }
+
+    // Starts tracking an animal; it is queued right away if it is not reserved
+    public void track(RescueAnimal animal) {
+        animal.addListener(this);
+        if (!animal.getReserved()) {
+            enqueue(animal);
+        }
+    }
+
+    // Starts tracking several animals. Each ready-queue receives its new animals in one
+    // step (ConcurrentLinkedQueue.addAll links them in with a single CAS), so a reserve
+    // for a type and country sees none or all of the batch's animals for that queue.
+    public void trackAll(List<? extends RescueAnimal> animals) {
+        Map<String, List<RescueAnimal>> byQueue = new HashMap<>();
+        for (RescueAnimal animal : animals) {
+            animal.addListener(this);
+            if (!animal.getReserved()) {
+                byQueue.computeIfAbsent(queueKey(animal), k -> new ArrayList<>()).add(animal);
+            }
+        }
+        for (Map.Entry<String, List<RescueAnimal>> entry : byQueue.entrySet()) {
+            ReadyQueue queue = readyQueue(entry.getKey());
+            List<RescueAnimal> fresh = new ArrayList<>(entry.getValue().size());
+            for (RescueAnimal animal : entry.getValue()) {
+                if (queue.members.add(animal)) {
+                    fresh.add(animal);
+                }
+            }
+            queue.entries.addAll(fresh);
+        }
+    }
+
+    // Stops tracking an animal; any queued entry is dropped when it is reached
+    public void untrack(RescueAnimal animal) {
+        animal.removeListener(this);
+        ReadyQueue queue = readyQueues.get(queueKey(animal));
+        if (queue != null) {
+            queue.entries.remove(animal);
+            queue.members.remove(animal);
+        }
+    }
+
+    // Drops every queue
+    public void clear() {
+        readyQueues.clear();
+    }
+
+    // Reserves the next available animal of the given type in the given country, or returns null
+    public RescueAnimal reserve(String type, String inServiceCountry) {
+        String key = queueKey(type, inServiceCountry);
+        ReadyQueue queue = readyQueues.get(key);
+        if (queue == null) {
+            return null;
+        }
+
+        RescueAnimal animal;
+        while ((animal = queue.entries.poll()) != null) {
+            // The entry is off the queue, so a release from now on queues the animal
+            // again. Done before the claim: a release that lands after a failed claim
+            // must not find the animal still marked as queued here.
+            queue.members.remove(animal);
+            if (queueKey(animal).equals(key) && animal.tryReserve()) {
+                return animal;
+            }
+            // Stale entry: reserved elsewhere or moved to another queue
+        }
+        return null;
+    }
+
+    // Returns a reserved animal to its ready-queue
+    public void release(RescueAnimal animal) {
+        animal.setReserved(false);
+    }
+
+    // Number of queued entries for a type and country (may include stale entries)
+    public int queuedCount(String type, String inServiceCountry) {
+        ReadyQueue queue = readyQueues.get(queueKey(type, inServiceCountry));
+        return queue == null ? 0 : queue.entries.size();
+    }
+
+    // Re-queues animals that are released or moved to another type or country
+    @Override
+    public void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        switch (field) {
+            case "reserved":
+            case "inServiceCountry":
+            case "type":
+                if (!animal.getReserved()) {
+                    enqueue(animal);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Queues an animal unless its queue already holds an entry for it
+    private void enqueue(RescueAnimal animal) {
+        ReadyQueue queue = readyQueue(queueKey(animal));
+        if (queue.members.add(animal)) {
+            queue.entries.add(animal);
+        }
+    }
+
+    private ReadyQueue readyQueue(String key) {
+        return readyQueues.computeIfAbsent(key, k -> new ReadyQueue());
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Multithreaded stress check for AnimalRegistry.reserve, using only the JDK:
+//
+//   javac *.java && java ReservationStress [threads] [animals] [churn seconds]
+//
+// drain: many threads reserve until every queue is empty; each animal must be claimed
+//        exactly once, none twice and none lost.
+// churn: a small pool of animals is reserved and released over and over while one
+//        thread moves unreserved animals to another country and back, which queues
+//        them a second time; an animal must never be held by two threads at once.
+//
+// Prints one line per phase and exits with status 1 if any check fails.
+public class ReservationStress {
+
+    private static final String[] COUNTRIES = { "United States", "Canada", "Kenya", "Japan" };
+    private static final String[] TYPES = { "dog", "monkey" };
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        int animals = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        long churnMillis = (long) ((args.length > 2 ? Double.parseDouble(args[2]) : 2) * 1000);
+
+        boolean ok = drain(threads, animals);
+        ok &= churn(threads, Math.max(TYPES.length * COUNTRIES.length, threads / 2), churnMillis);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean drain(int threads, int count) throws InterruptedException {
+        AnimalRegistry registry = new AnimalRegistry();
+        Map<RescueAnimal, Integer> ids = register(registry, count);
+        AtomicIntegerArray claims = new AtomicIntegerArray(count);
+
+        run(threads, thread -> {
+            // Keep going until a full pass over every queue finds nothing
+            boolean found = true;
+            while (found) {
+                found = false;
+                for (int k = 0; k < TYPES.length * COUNTRIES.length; k++) {
+                    int key = (k + thread) % (TYPES.length * COUNTRIES.length);
+                    RescueAnimal animal = registry.reserve(TYPES[key % TYPES.length], COUNTRIES[key / TYPES.length]);
+                    if (animal != null) {
+                        claims.incrementAndGet(ids.get(animal));
+                        found = true;
+                    }
+                }
+            }
+        });
+
+        int twice = 0;
+        int lost = 0;
+        for (int i = 0; i < count; i++) {
+            if (claims.get(i) > 1) {
+                twice++;
+            } else if (claims.get(i) == 0) {
+                lost++;
+            }
+        }
+        boolean ok = twice == 0 && lost == 0;
+        System.out.printf("drain: %d animals, %d threads: %d claimed twice, %d never claimed: %s%n",
+                count, threads, twice, lost, ok ? "ok" : "FAILED");
+        return ok;
+    }
+
+    private static boolean churn(int threads, int count, long millis) throws InterruptedException {
+        AnimalRegistry registry = new AnimalRegistry();
+        Map<RescueAnimal, Integer> ids = register(registry, count);
+        AtomicIntegerArray holders = new AtomicIntegerArray(count);
+        AtomicLong claims = new AtomicLong();
+        AtomicLong overlaps = new AtomicLong();
+        RescueAnimal[] pool = ids.keySet().toArray(new RescueAnimal[0]);
+        long deadline = System.nanoTime() + millis * 1_000_000;
+
+        run(threads, thread -> {
+            if (thread == 0 && threads > 1) {
+                for (int i = 0; System.nanoTime() < deadline; i++) {
+                    RescueAnimal animal = pool[i % pool.length];
+                    if (!animal.getReserved()) {
+                        String country = animal.getInServiceCountry();
+                        animal.setInServiceCountry(COUNTRIES[(i + 1) % COUNTRIES.length]);
+                        animal.setInServiceCountry(country);
+                    }
+                    Thread.yield();
+                }
+                return;
+            }
+            int key = thread;
+            while (System.nanoTime() < deadline) {
+                key = (key + 1) % (TYPES.length * COUNTRIES.length);
+                RescueAnimal animal = registry.reserve(TYPES[key % TYPES.length], COUNTRIES[key / TYPES.length]);
+                if (animal == null) {
+                    continue;
+                }
+                int id = ids.get(animal);
+                if (holders.getAndIncrement(id) != 0) {
+                    overlaps.incrementAndGet();
+                }
+                claims.incrementAndGet();
+                Thread.yield();
+                holders.decrementAndGet(id);
+                animal.setReserved(false);
+            }
+        });
+
+        int stillReserved = 0;
+        for (RescueAnimal animal : ids.keySet()) {
+            if (animal.getReserved()) {
+                stillReserved++;
+            }
+        }
+        boolean ok = overlaps.get() == 0 && stillReserved == 0;
+        System.out.printf("churn: %d animals, %d threads, %d claims: %d held twice at once, %d left reserved: %s%n",
+                count, threads, claims.get(), overlaps.get(), stillReserved, ok ? "ok" : "FAILED");
+        return ok;
+    }
+
+    // Registers unreserved dogs and monkeys spread over every country; returns their ids
+    private static Map<RescueAnimal, Integer> register(AnimalRegistry registry, int count) {
+        Map<RescueAnimal, Integer> ids = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String country = COUNTRIES[(i / 2) % COUNTRIES.length];
+            RescueAnimal animal = i % 2 == 0
+                    ? new Dog("dog-" + i, "Beagle", "male", 2, 20f, "01-01-2020", country, "in service", false, country)
+                    : new Monkey("monkey-" + i, "Capuchin", 1f, 1f, 1f, "female", 2, 5f, "01-01-2020", country,
+                            "in service", false, country);
+            registry.add(animal);
+            ids.put(animal, i);
+        }
+        return ids;
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+
+    // Starts every thread at once and waits for all of them
+    private static void run(int threads, Worker worker) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread reserver = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                worker.run(thread);
+            }, "reserver-" + t);
+            reserver.start();
+            started.add(reserver);
+        }
+        start.countDown();
+        for (Thread reserver : started) {
+            reserver.join();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Scaling check for ShardedAnimalStore, using only the JDK:
+//
+//   javac *.java && java ShardBenchmark [seconds] [shards ...]
+//
+// For each shard count (default 1, 2 and 4) it launches the ShardNode processes, loads
+// the same synthetic animals.txt through the router and then has several client threads
+// reserve animals across every country for the given time (default 5 seconds). Reports
+// load time, reservations per second and the speed-up over the first shard count.
+// Shards only add throughput when there are spare cores for their processes, so the
+// processor count is printed with the results.
+public class ShardBenchmark {
+
+    private static final String[] COUNTRIES = {
+        "United States", "Canada", "United Kingdom", "Mexico", "Brazil", "Germany", "France",
+        "Spain", "Italy", "Japan", "India", "Australia", "Kenya", "Egypt", "Peru", "Chile"
+    };
+    private static final int ANIMALS = 200_000;
+    private static final int CLIENT_THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+        List<Integer> shardCounts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            shardCounts.add(Integer.parseInt(args[i]));
+        }
+        if (shardCounts.isEmpty()) {
+            shardCounts.add(1);
+            shardCounts.add(2);
+            shardCounts.add(4);
+        }
+
+        Path data = Files.createTempFile("shard-benchmark", ".txt");
+        try {
+            writeAnimals(data);
+            System.out.printf(Locale.ROOT, "%d animals, %d client threads, %d processors%n",
+                    ANIMALS, CLIENT_THREADS, Runtime.getRuntime().availableProcessors());
+            System.out.printf(Locale.ROOT, "%-8s %10s %14s %10s%n", "shards", "load ms", "reserves/s", "speed-up");
+            double baseline = 0;
+            for (int shards : shardCounts) {
+                try (ShardedAnimalStore store = ShardedAnimalStore.launch(shards)) {
+                    long start = System.nanoTime();
+                    store.load(data);
+                    long loadMillis = (System.nanoTime() - start) / 1_000_000;
+                    double rate = reserve(store, (long) (seconds * 1e9));
+                    if (baseline == 0) {
+                        baseline = rate;
+                    }
+                    System.out.printf(Locale.ROOT, "%-8d %10d %14.0f %9.2fx%n", shards, loadMillis, rate, rate / baseline);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(data);
+        }
+    }
+
+    // Unreserved, in-service dogs and monkeys spread evenly over the countries
+    private static void writeAnimals(Path data) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(data, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ANIMALS; i++) {
+                String country = COUNTRIES[(i / 2) % COUNTRIES.length];
+                RescueAnimal animal = i % 2 == 0
+                        ? new Dog("dog-" + i, "Beagle", "male", 2, 20f, "01-01-2020", country, "in service", false, country)
+                        : new Monkey("monkey-" + i, "Capuchin", 1f, 1f, 1f, "female", 2, 5f, "01-01-2020", country,
+                                "in service", false, country);
+                writer.write(AnimalLoader.formatLine(animal));
+                writer.newLine();
+            }
+        }
+    }
+
+    // Reserves from every thread for the given time; returns reservations per second
+    private static double reserve(ShardedAnimalStore store, long nanos) throws InterruptedException {
+        AtomicLong reserved = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < CLIENT_THREADS; t++) {
+            int thread = t;
+            Thread client = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = thread; System.nanoTime() < deadline[0]; i++) {
+                    String type = i % 2 == 0 ? "dog" : "monkey";
+                    try {
+                        if (store.reserve(type, COUNTRIES[(i / 2) % COUNTRIES.length]) != null) {
+                            reserved.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }, "client-" + t);
+            client.start();
+            threads.add(client);
+        }
+        long begin = System.nanoTime();
+        deadline[0] = begin + nanos;
+        start.countDown();
+        for (Thread client : threads) {
+            client.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " reserve request(s) failed");
+        }
+        return reserved.get() / elapsed;
+    }
+}
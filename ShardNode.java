@@ -0,0 +1,36 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+// One partition of a ShardedAnimalStore: its own registry, reservation engine and search
+// engine, served through AnimalHttpServer on a loopback port. Started as a separate
+// process by ShardedAnimalStore.launch, or by hand:
+//
+//   java ShardNode <port>        (0 picks a free port)
+//
+// The node prints "listening <port>" once it accepts requests and exits when its
+// standard input is closed, so it does not outlive the process that started it.
+public class ShardNode {
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        // The router waits for the final chunk of each response; without TCP_NODELAY it
+        // sits behind Nagle and the router's delayed ACK (~40ms per request)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        AnimalRegistry registry = new AnimalRegistry();
+        AnimalSearchEngine search = new AnimalSearchEngine(registry);
+        AvailabilityView availability = new AvailabilityView(registry);
+        AnimalHttpServer server = new AnimalHttpServer(registry, search, availability,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                AnimalHttpServer.DEFAULT_MAX_CONCURRENT, AnimalHttpServer.DEFAULT_QUEUE_CAPACITY);
+        server.start();
+        System.out.println("listening " + server.getPort());
+        System.out.flush();
+
+        while (System.in.read() >= 0) {
+            // Wait for the parent to close stdin
+        }
+        server.stop(0);
+        System.exit(0);
+    }
+}
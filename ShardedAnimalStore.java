@@ -0,0 +1,533 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Router over a set of ShardNode processes that partition the animals by in-service
+// country. Every country belongs to exactly one shard (by hash of its lower-cased
+// name), so:
+//
+// - intake and reserve go to the owning shard only, and reservations on different
+//   shards run in parallel on separate processes
+// - each (type, name) also has an owning shard, by hash of the pair, whose /names
+//   claims are the authority on whether the name is taken. Intake claims the name there
+//   first and only then adds the animal to its country's shard, so two intakes of the
+//   same name for different countries cannot both succeed
+// - search fans out to every shard (or only the owner when it filters on the in-service
+//   country), asks each for the first offset + limit hits and merges them in the same
+//   order a single AnimalSearchEngine would use
+//
+// Nodes talk the AnimalHttpServer JSON protocol over loopback sockets with keep-alive
+// connections. Animals returned by the router are copies decoded from that JSON;
+// changing them does not change the shard's animal.
+public class ShardedAnimalStore implements Closeable {
+
+    private final List<URI> nodes;
+    private final List<Process> processes;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    // Routes to nodes that are already running, e.g. http://127.0.0.1:9001
+    public ShardedAnimalStore(List<URI> nodes) {
+        this(nodes, new ArrayList<>());
+    }
+
+    private ShardedAnimalStore(List<URI> nodes, List<Process> processes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.nodes = new ArrayList<>(nodes);
+        this.processes = processes;
+    }
+
+    // Starts the given number of ShardNode processes with this JVM and class path, and
+    // routes to them; close() stops them again
+    public static ShardedAnimalStore launch(int shards) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        List<Process> processes = new ArrayList<>();
+        List<URI> nodes = new ArrayList<>();
+        try {
+            for (int i = 0; i < shards; i++) {
+                Process process = new ProcessBuilder(java, "-cp", classPath, ShardNode.class.getName(), "0")
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                processes.add(process);
+                BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                String line = out.readLine();
+                if (line == null || !line.startsWith("listening ")) {
+                    throw new IOException("Shard " + i + " did not start");
+                }
+                nodes.add(URI.create("http://127.0.0.1:" + line.substring("listening ".length()).trim()));
+            }
+        } catch (IOException e) {
+            processes.forEach(Process::destroy);
+            throw e;
+        }
+        return new ShardedAnimalStore(nodes, processes);
+    }
+
+    public int shardCount() {
+        return nodes.size();
+    }
+
+    // Shard that owns animals serving in the given country
+    public int shardFor(String inServiceCountry) {
+        return Math.floorMod(AnimalRegistry.key(inServiceCountry).hashCode(), nodes.size());
+    }
+
+    // Shard whose /names claims decide whether an animal's type and name are taken
+    public int nameShardFor(String type, String name) {
+        return Math.floorMod((AnimalRegistry.key(type) + "|" + AnimalRegistry.key(name)).hashCode(), nodes.size());
+    }
+
+    // Adds an animal to its shard unless one of the same type and name exists on any
+    // shard; returns false for a duplicate. The name is claimed on its owning shard
+    // first. It is given back if the country's shard rejects the animal, but kept if
+    // the outcome is unknown (the connection failed), so a name is never in use twice.
+    public boolean intake(RescueAnimal animal) throws IOException {
+        String type = AnimalRegistry.typeKey(animal);
+        if (!names("claim", type, animal.getName())) {
+            return false;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        try (AnimalJsonCodec.Writer json = new AnimalJsonCodec.Writer(body, 1024)) {
+            json.animal(animal);
+        }
+        HttpResponse<InputStream> response = send(HttpRequest.newBuilder(
+                node(shardFor(animal.getInServiceCountry()), "/animals/" + (animal instanceof Monkey ? "monkeys" : "dogs")))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())).build());
+        boolean rejected = response.statusCode() / 100 == 4;
+        try (InputStream in = body(response)) {
+            if (response.statusCode() == 409) {
+                return false;
+            }
+            check(response, in);
+            return true;
+        } finally {
+            if (rejected) {
+                names("release", type, animal.getName());
+            }
+        }
+    }
+
+    // Reserves an animal of the type serving in the country on the owning shard, or
+    // returns null when none is available
+    public RescueAnimal reserve(String type, String inServiceCountry) throws IOException {
+        URI uri = node(shardFor(inServiceCountry), "/reserve?type=" + encode(type) + "&country=" + encode(inServiceCountry));
+        HttpResponse<InputStream> response = send(HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.noBody()).build());
+        try (InputStream in = body(response)) {
+            if (response.statusCode() == 404) {
+                return null;
+            }
+            check(response, in);
+            return new AnimalJsonCodec.Reader(in, 4096).readAnimal(type.equalsIgnoreCase("monkey") ? "Monkey" : "Dog");
+        }
+    }
+
+    // Runs a query on the shards that can hold matches and merges their hits
+    public AnimalSearchEngine.Page search(AnimalSearchEngine.Query query) throws IOException {
+        String country = query.getFields().get(AnimalSearchEngine.IN_SERVICE_COUNTRY);
+        List<Integer> shards = country != null ? List.of(shardFor(country)) : allShards();
+        int wanted = query.getOffset() + query.getLimit();
+
+        AnimalSearchEngine.Query perShard = copy(query).page(0, wanted);
+        List<AnimalSearchEngine.Hit> merged = new ArrayList<>();
+        boolean shardHasMore = false;
+        for (ShardPage page : fanOut(perShard, shards)) {
+            for (RescueAnimal animal : page.animals) {
+                merged.add(new AnimalSearchEngine.Hit(animal, score(query, animal)));
+            }
+            shardHasMore |= page.hasMore;
+        }
+        // Stable sort: filter-only and exact queries keep shard order
+        Comparator<AnimalSearchEngine.Hit> order = hitOrder(query);
+        if (order != null) {
+            merged.sort(order);
+        }
+        int from = Math.min(query.getOffset(), merged.size());
+        int to = Math.min(wanted, merged.size());
+        return new AnimalSearchEngine.Page(new ArrayList<>(merged.subList(from, to)), query.getOffset(),
+                shardHasMore || merged.size() > wanted);
+    }
+
+    // Distributes the animals of an animals.txt file to their shards; returns how many
+    // were added. Runs in two passes over the file, each streaming one chunked request
+    // body per shard straight from the file, so neither the animals nor any shard's
+    // JSON is held in memory:
+    //
+    // 1. every name is claimed on its owning shard, as intake does; the router keeps one
+    //    bit per animal recording whether its claim succeeded
+    // 2. each country shard is sent the animals whose claim succeeded
+    //
+    // Unparseable lines and monkeys of an unknown species are skipped, and so is a name
+    // that is already taken, whether by an earlier line or by an animal on any shard.
+    public long load(Path animalsFile) throws IOException {
+        List<CompletableFuture<HttpResponse<InputStream>>> claims = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            int shard = i;
+            claims.add(postStream(node(i, "/names/claim-all"), animalsFile, () -> (animal, json) -> {
+                if (nameShardFor(AnimalRegistry.typeKey(animal), animal.getName()) == shard) {
+                    json.beginObject().name("type").value(AnimalRegistry.typeKey(animal))
+                            .name("name").value(animal.getName()).endObject();
+                }
+            }));
+        }
+        // Claim results per name shard, in the order of that shard's animals in the file
+        List<BitSet> claimed = new ArrayList<>();
+        for (CompletableFuture<HttpResponse<InputStream>> future : claims) {
+            BitSet bits = new BitSet();
+            readResponse(join(future), "claimed", reader -> reader.readBooleanArray(bits));
+            claimed.add(bits);
+        }
+
+        List<CompletableFuture<HttpResponse<InputStream>>> imports = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            int shard = i;
+            imports.add(postStream(node(i, "/animals/import"), animalsFile, () -> {
+                int[] seen = new int[nodes.size()];
+                return (animal, json) -> {
+                    int nameShard = nameShardFor(AnimalRegistry.typeKey(animal), animal.getName());
+                    if (claimed.get(nameShard).get(seen[nameShard]++)
+                            && shardFor(animal.getInServiceCountry()) == shard) {
+                        json.animal(animal);
+                    }
+                };
+            }));
+        }
+        long[] added = new long[1];
+        for (CompletableFuture<HttpResponse<InputStream>> future : imports) {
+            readResponse(join(future), "added", reader -> added[0] += reader.nextLong());
+        }
+        return added[0];
+    }
+
+    // Stops the shard processes started by launch()
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            try {
+                process.getOutputStream().close();
+            } catch (IOException e) {
+                // The node is already gone
+            }
+        }
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+
+    // One shard's answer to a search
+    private static class ShardPage {
+        final List<RescueAnimal> animals = new ArrayList<>();
+        boolean hasMore;
+    }
+
+    // Sends a query to the given shards in parallel and decodes their pages
+    private List<ShardPage> fanOut(AnimalSearchEngine.Query query, List<Integer> shards) throws IOException {
+        String parameters = queryParameters(query);
+        List<CompletableFuture<HttpResponse<InputStream>>> responses = new ArrayList<>();
+        for (int shard : shards) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(node(shard, "/search?" + parameters)).GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream()));
+        }
+        List<ShardPage> pages = new ArrayList<>();
+        for (CompletableFuture<HttpResponse<InputStream>> future : responses) {
+            HttpResponse<InputStream> response = join(future);
+            try (InputStream in = body(response)) {
+                check(response, in);
+                ShardPage page = new ShardPage();
+                AnimalJsonCodec.Reader reader = new AnimalJsonCodec.Reader(in, 16 * 1024);
+                reader.beginObject();
+                for (String name = reader.nextName(); name != null; name = reader.nextName()) {
+                    if (name.equals("hasMore")) {
+                        page.hasMore = reader.nextBoolean();
+                    } else if (name.equals("results")) {
+                        reader.readArray(null, page.animals::add);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    // Claims or releases a name on its owning shard; a claim returns false if taken
+    private boolean names(String action, String type, String name) throws IOException {
+        URI uri = node(nameShardFor(type, name), "/names/" + action + "?type=" + encode(type) + "&name=" + encode(name));
+        HttpResponse<InputStream> response = send(HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.noBody()).build());
+        try (InputStream in = body(response)) {
+            if (response.statusCode() == 409) {
+                return false;
+            }
+            check(response, in);
+            return true;
+        }
+    }
+
+    // Score the single-node engine would give the hit
+    private static int score(AnimalSearchEngine.Query query, RescueAnimal animal) {
+        if (query.getName() == null) {
+            return 0;
+        }
+        String wanted = AnimalRegistry.key(query.getName());
+        String name = AnimalRegistry.key(animal.getName());
+        switch (query.getNameMatch()) {
+            case PREFIX: return name.length() - wanted.length();
+            case FUZZY: return AnimalSearchEngine.editDistance(wanted, name, Integer.MAX_VALUE);
+            default: return 0;
+        }
+    }
+
+    // Merge order matching AnimalSearchEngine: prefix hits by name, fuzzy hits by edit
+    // distance then name; null keeps shard order
+    private static Comparator<AnimalSearchEngine.Hit> hitOrder(AnimalSearchEngine.Query query) {
+        if (query.getName() == null || query.getNameMatch() == AnimalSearchEngine.NameMatch.EXACT) {
+            return null;
+        }
+        Comparator<AnimalSearchEngine.Hit> byName = Comparator.comparing(hit -> AnimalRegistry.key(hit.getAnimal().getName()));
+        return query.getNameMatch() == AnimalSearchEngine.NameMatch.FUZZY
+                ? Comparator.comparingInt(AnimalSearchEngine.Hit::getScore).thenComparing(byName)
+                : byName;
+    }
+
+    private static AnimalSearchEngine.Query copy(AnimalSearchEngine.Query query) {
+        AnimalSearchEngine.Query copy = new AnimalSearchEngine.Query();
+        if (query.getName() != null) {
+            copy.name(query.getName(), query.getNameMatch());
+        }
+        for (Map.Entry<String, String> field : query.getFields().entrySet()) {
+            copy.where(field.getKey(), field.getValue());
+        }
+        return copy.unreservedOnly(query.isUnreservedOnly());
+    }
+
+    private static String queryParameters(AnimalSearchEngine.Query query) {
+        StringBuilder parameters = new StringBuilder();
+        if (query.getName() != null) {
+            parameters.append("name=").append(encode(query.getName()))
+                    .append("&match=").append(query.getNameMatch().name().toLowerCase()).append('&');
+        }
+        for (Map.Entry<String, String> field : query.getFields().entrySet()) {
+            parameters.append(encode(field.getKey())).append('=').append(encode(field.getValue())).append('&');
+        }
+        return parameters.append("unreserved=").append(query.isUnreservedOnly())
+                .append("&offset=").append(query.getOffset())
+                .append("&limit=").append(query.getLimit()).toString();
+    }
+
+    private List<Integer> allShards() {
+        List<Integer> shards = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            shards.add(i);
+        }
+        return shards;
+    }
+
+    private URI node(int shard, String pathAndQuery) {
+        return nodes.get(shard).resolve(pathAndQuery);
+    }
+
+    // Posts a JSON array generated from animals.txt while it is sent; see AnimalFileBody
+    private CompletableFuture<HttpResponse<InputStream>> postStream(URI uri, Path animalsFile,
+            Supplier<AnimalFileBody.Filter> filters) {
+        return client.sendAsync(HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new AnimalFileBody(animalsFile, filters.get())))
+                .build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private interface MemberReader {
+        void read(AnimalJsonCodec.Reader reader) throws IOException;
+    }
+
+    // Reads one member of a JSON object response, skipping the others
+    private static void readResponse(HttpResponse<InputStream> response, String member, MemberReader action)
+            throws IOException {
+        try (InputStream in = body(response)) {
+            check(response, in);
+            AnimalJsonCodec.Reader reader = new AnimalJsonCodec.Reader(in, 1024);
+            reader.beginObject();
+            for (String name = reader.nextName(); name != null; name = reader.nextName()) {
+                if (name.equals(member)) {
+                    action.read(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+    }
+
+    // Request body produced from animals.txt as the client reads it: a JSON array of
+    // whatever the filter writes for each animal, generated a batch of lines at a time.
+    // The length is unknown up front, so the client sends it with chunked encoding.
+    private static class AnimalFileBody extends InputStream {
+
+        // Writes the JSON for one animal of the file, or nothing to leave it out
+        interface Filter {
+            void write(RescueAnimal animal, AnimalJsonCodec.Writer json) throws IOException;
+        }
+
+        // Lines turned into JSON per refill
+        private static final int LINES_PER_CHUNK = 512;
+
+        private final Path file;
+        private final Filter filter;
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(64 * 1024);
+        private final AnimalJsonCodec.Writer json = new AnimalJsonCodec.Writer(chunk);
+        private BufferedReader lines;
+        private byte[] bytes = new byte[0];
+        private int position;
+        private boolean done;
+
+        AnimalFileBody(Path file, Filter filter) {
+            this.file = file;
+            this.filter = filter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            done = true;
+            if (lines != null) {
+                lines.close();
+            }
+        }
+
+        // Makes sure unread bytes are available; false at the end of the body
+        private boolean fill() throws IOException {
+            while (position == bytes.length) {
+                if (done) {
+                    return false;
+                }
+                if (lines == null) {
+                    lines = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                    json.beginArray();
+                }
+                chunk.reset();
+                for (int i = 0; i < LINES_PER_CHUNK && !done; i++) {
+                    String line = lines.readLine();
+                    if (line == null) {
+                        json.endArray();
+                        lines.close();
+                        done = true;
+                    } else {
+                        RescueAnimal animal = parse(line);
+                        if (animal != null) {
+                            filter.write(animal, json);
+                        }
+                    }
+                }
+                json.flush();
+                bytes = chunk.toByteArray();
+                position = 0;
+            }
+            return true;
+        }
+
+        // The animal on a line, or null for a blank or malformed line or a monkey of an
+        // unknown species
+        private static RescueAnimal parse(String line) {
+            if (line.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                RescueAnimal animal = AnimalLoader.parseLine(line);
+                boolean valid = !(animal instanceof Monkey)
+                        || Monkey.isValidSpecies(((Monkey) animal).getSpecies());
+                return valid ? animal : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a shard", e);
+        }
+    }
+
+    private static HttpResponse<InputStream> join(CompletableFuture<HttpResponse<InputStream>> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // Response body that is read to the end before it is closed. Closing the client's
+    // stream early cancels the exchange and drops the keep-alive connection, which
+    // under concurrent requests can also fail a request about to reuse it.
+    private static InputStream body(HttpResponse<InputStream> response) {
+        return new FilterInputStream(response.body()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    byte[] rest = new byte[4096];
+                    while (in.read(rest) >= 0) {
+                        // Discard the unread tail, e.g. the final chunk
+                    }
+                } finally {
+                    super.close();
+                }
+            }
+        };
+    }
+
+    // Turns an error response into an IOException carrying the shard's message
+    private static void check(HttpResponse<InputStream> response, InputStream body) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            String message = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            throw new IOException("Shard " + response.uri().getAuthority() + " returned "
+                    + response.statusCode() + ": " + message);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Copy-on-write view of the registry at one moment, for writing a snapshot while the
+// registry keeps changing. Taking the capture only copies the two collections; no
+// animal is copied until something changes it. The capture listens to the registry
+// and, the first time an animal changes, keeps a copy of it with the changed field
+// set back to its old value. Reading a range of the capture returns copies with the
+// values the animals had when the capture was taken.
+//
+// Animals added after the capture are not part of it. A change that is still being
+// made while its animal is read (value set, event not yet delivered) may be included.
+// Close the capture when the snapshot is written so it stops following changes.
+public class SnapshotCapture implements RegistryListener, CompressedSnapshot.Source, AutoCloseable {
+
+    private final AnimalRegistry registry;
+    private final List<Dog> dogs;
+    private final List<Monkey> monkeys;
+
+    // Animals changed since the capture, with their values at capture time
+    private final Map<RescueAnimal, PreImage> preImages = new IdentityHashMap<>();
+
+    private static class PreImage {
+        final RescueAnimal animal;
+        final Set<String> restored = new HashSet<>();
+
+        PreImage(RescueAnimal animal) {
+            this.animal = animal;
+        }
+    }
+
+    private SnapshotCapture(AnimalRegistry registry, List<Dog> dogs, List<Monkey> monkeys) {
+        this.registry = registry;
+        this.dogs = dogs;
+        this.monkeys = monkeys;
+    }
+
+    // Captures the registry. The collections are copied and the listener added while
+    // holding the registry's lock, so no addition falls between the two.
+    public static SnapshotCapture of(AnimalRegistry registry) {
+        synchronized (registry) {
+            SnapshotCapture capture = new SnapshotCapture(registry, registry.copyDogs(), registry.copyMonkeys());
+            registry.addRegistryListener(capture);
+            return capture;
+        }
+    }
+
+    @Override
+    public int dogCount() {
+        return dogs.size();
+    }
+
+    @Override
+    public int monkeyCount() {
+        return monkeys.size();
+    }
+
+    // Copies of the captured dogs in [from, to) with their values at capture time
+    @Override
+    public List<Dog> dogs(int from, int to) {
+        List<Dog> block = new ArrayList<>(to - from);
+        for (Dog dog : dogs.subList(from, to)) {
+            block.add((Dog) copyOf(dog));
+        }
+        restorePreImages(dogs.subList(from, to), block);
+        return block;
+    }
+
+    // Copies of the captured monkeys in [from, to) with their values at capture time
+    @Override
+    public List<Monkey> monkeys(int from, int to) {
+        List<Monkey> block = new ArrayList<>(to - from);
+        for (Monkey monkey : monkeys.subList(from, to)) {
+            block.add((Monkey) copyOf(monkey));
+        }
+        restorePreImages(monkeys.subList(from, to), block);
+        return block;
+    }
+
+    // Replaces the copy of every animal that changed since the capture with a copy of
+    // its pre-image. The live animals are copied first, without the lock, so setters on
+    // other threads are only held up for these lookups. A change made after an animal
+    // was copied is not in the copy; one made before it has already delivered its event
+    // and left a pre-image, unless it is still being made (see the class comment).
+    @SuppressWarnings("unchecked")
+    private synchronized <T extends RescueAnimal> void restorePreImages(List<T> captured, List<T> block) {
+        if (preImages.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < captured.size(); i++) {
+            PreImage preImage = preImages.get(captured.get(i));
+            if (preImage != null) {
+                // Copied again because a later event may still restore one of its fields
+                block.set(i, (T) copyOf(preImage.animal));
+            }
+        }
+    }
+
+    // Number of animals copied because they changed after the capture
+    public synchronized int changedCount() {
+        return preImages.size();
+    }
+
+    @Override
+    public synchronized void animalChanged(RescueAnimal animal, String field, Object oldValue, Object newValue) {
+        PreImage preImage = preImages.get(animal);
+        if (preImage == null) {
+            preImage = new PreImage(copyOf(animal));
+            preImages.put(animal, preImage);
+        }
+        // The first event for a field carries its value at capture time. The copy may
+        // already hold a later value if another thread changed the field before this
+        // event arrived, so restore every field once.
+        if (preImage.restored.add(field)) {
+            restore(preImage.animal, field, oldValue);
+        }
+    }
+
+    @Override
+    public void close() {
+        registry.removeRegistryListener(this);
+    }
+
+    // Unregistered copy of a dog or monkey
+    static RescueAnimal copyOf(RescueAnimal animal) {
+        RescueAnimal copy;
+        if (animal instanceof Monkey) {
+            Monkey monkey = (Monkey) animal;
+            copy = new Monkey(monkey.getName(), monkey.getSpecies(), monkey.getTailLength(), monkey.getHeight(),
+                    monkey.getBodyLength(), monkey.getGender(), monkey.getAge(), monkey.getWeight(),
+                    monkey.getAcquisitionDate(), monkey.getAcquisitionCountry(), monkey.getTrainingStatus(),
+                    monkey.getReserved(), monkey.getInServiceCountry());
+        } else {
+            Dog dog = (Dog) animal;
+            copy = new Dog(dog.getName(), dog.getBreed(), dog.getGender(), dog.getAge(), dog.getWeight(),
+                    dog.getAcquisitionDate(), dog.getAcquisitionCountry(), dog.getTrainingStatus(),
+                    dog.getReserved(), dog.getInServiceCountry());
+        }
+        if (animal.getType() != null) {
+            copy.setType(animal.getType());
+        }
+        copy.setId(animal.getId());
+        return copy;
+    }
+
+    // Sets a field of a copy back to the value from a change event
+    private static void restore(RescueAnimal animal, String field, Object value) {
+        switch (field) {
+            case "id": animal.setId((String) value); break;
+            case "name": animal.setName((String) value); break;
+            case "type": animal.setType((String) value); break;
+            case "gender": animal.setGender((String) value); break;
+            case "age": animal.setAge((Integer) value); break;
+            case "weight": animal.setWeight((Float) value); break;
+            case "acquisitionDate": animal.setAcquisitionDate((String) value); break;
+            case "acquisitionCountry": animal.setAcquisitionSource((String) value); break;
+            case "trainingStatus": animal.setTrainingStatus((String) value); break;
+            case "reserved": animal.setReserved((Boolean) value); break;
+            case "inServiceCountry": animal.setInServiceCountry((String) value); break;
+            case "breed": ((Dog) animal).setBreed((String) value); break;
+            case "species": ((Monkey) animal).setSpecies((String) value); break;
+            case "tailLength": ((Monkey) animal).setTailLength((Float) value); break;
+            case "height": ((Monkey) animal).setHeight((Float) value); break;
+            case "bodyLength": ((Monkey) animal).setBodyLength((Float) value); break;
+            default: break;
+        }
+    }
+}
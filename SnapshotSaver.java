@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Writes compressed snapshots of the registry on a dedicated background thread. A save
+// takes a SnapshotCapture on the calling thread (a copy of the two collections) and
+// returns at once; serialization, compression and the atomic rename happen on the
+// saver thread while the caller keeps changing the registry. Saves run one at a time
+// in the order they were requested.
+public class SnapshotSaver implements AutoCloseable {
+
+    private final AnimalRegistry registry;
+    private final Path path;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(task -> {
+        Thread saver = new Thread(task, "snapshot-saver");
+        saver.setDaemon(true);
+        return saver;
+    });
+    private CompletableFuture<Result> last = CompletableFuture.completedFuture(null);
+
+    // What a finished save wrote
+    public static class Result {
+        private final int animals;
+        private final int changedDuringSave;
+        private final long bytes;
+        private final long nanos;
+
+        Result(int animals, int changedDuringSave, long bytes, long nanos) {
+            this.animals = animals;
+            this.changedDuringSave = changedDuringSave;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public int getAnimals() { return animals; }
+
+        // Animals changed while the save ran; the file has their values from before
+        public int getChangedDuringSave() { return changedDuringSave; }
+
+        public long getBytes() { return bytes; }
+
+        public long getNanos() { return nanos; }
+    }
+
+    public SnapshotSaver(AnimalRegistry registry, Path path) {
+        this.registry = registry;
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Captures the registry now and writes it in the background. The future fails with
+    // an UncheckedIOException if the write fails; the previous file is then untouched.
+    public synchronized CompletableFuture<Result> saveAsync() {
+        SnapshotCapture capture = SnapshotCapture.of(registry);
+        long start = System.nanoTime();
+        last = CompletableFuture.supplyAsync(() -> {
+            try (SnapshotCapture source = capture) {
+                long bytes = CompressedSnapshot.save(path, source);
+                return new Result(source.dogCount() + source.monkeyCount(), source.changedCount(),
+                        bytes, System.nanoTime() - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, thread);
+        return last;
+    }
+
+    // Waits until every requested save has finished, successfully or not
+    public void awaitIdle() {
+        CompletableFuture<Result> pending;
+        synchronized (this) {
+            pending = last;
+        }
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            // The failure was reported to whoever requested that save
+        }
+    }
+
+    // Finishes the requested saves and stops the saver thread
+    @Override
+    public void close() {
+        thread.shutdown();
+        try {
+            thread.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}